@@ -0,0 +1,25 @@
+// k6 run -e BASE_URL=http://localhost:8080 -e VUS=500 perf/books-load.js
+import http from 'k6/http';
+import { check } from 'k6';
+
+const BASE_URL = __ENV.BASE_URL || 'http://localhost:8080';
+const VUS = parseInt(__ENV.VUS || '200');
+
+export const options = {
+    stages: [
+        { duration: '30s', target: VUS },
+        { duration: '2m', target: VUS },
+        { duration: '15s', target: 0 },
+    ],
+    thresholds: {
+        // the stack holds VUS connections if p99 stays under the budget
+        http_req_duration: [`p(99)<${__ENV.P99_MS || '250'}`],
+        http_req_failed: ['rate<0.01'],
+    },
+};
+
+export default function () {
+    const page = Math.floor(Math.random() * 10);
+    const res = http.get(`${BASE_URL}/books/?page=${page}&size=20&sort=name`);
+    check(res, { 'status is 200': (r) => r.status === 200 });
+}
@@ -0,0 +1,42 @@
+#!/usr/bin/env bash
+# Compares platform and virtual thread mode at a fixed concurrency.
+# Start the application first, once per mode:
+#   java -jar target/book-store-*.jar
+#   java -jar target/book-store-*.jar --bookstore.virtual-threads.enabled=true   (Java 21+)
+# then run: perf/compare-threads.sh <label> [vus]
+set -euo pipefail
+
+LABEL=${1:?usage: compare-threads.sh <label> [vus]}
+VUS=${2:-1000}
+BASE_URL=${BASE_URL:-http://localhost:8080}
+OUT=target/perf/${LABEL}
+mkdir -p "${OUT}"
+
+metric() {
+    curl -s "${BASE_URL}/actuator/metrics/$1${2:+?tag=$2}" | sed -E 's/.*"value":([0-9.E]+).*/\1/'
+}
+
+idle_heap=$(metric jvm.memory.used area:heap)
+
+k6 run -q -e BASE_URL="${BASE_URL}" -e VUS="${VUS}" --summary-export "${OUT}/k6-summary.json" \
+    "$(dirname "$0")/books-load.js" &
+K6=$!
+
+echo "seconds,live_threads,heap_used" > "${OUT}/samples.csv"
+second=0
+while kill -0 ${K6} 2>/dev/null; do
+    echo "${second},$(metric jvm.threads.live),$(metric jvm.memory.used area:heap)" >> "${OUT}/samples.csv"
+    sleep 5
+    second=$((second + 5))
+done
+wait ${K6} || true
+
+# peak threads, and heap above idle divided by the requests in flight
+awk -F, -v idle="${idle_heap}" -v vus="${VUS}" 'NR > 1 {
+        if ($2 > threads) threads = $2
+        if ($3 > heap) heap = $3
+    } END {
+        printf "peak live threads:           %d\n", threads
+        printf "heap per in-flight request:  %.0f KiB\n", (heap - idle) / vus / 1024
+    }' "${OUT}/samples.csv"
+grep -A3 '"http_reqs"' "${OUT}/k6-summary.json" | grep '"rate"' | sed -E 's/.*"rate": *([0-9.]+).*/throughput:                  \1 req\/s/'
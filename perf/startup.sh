@@ -0,0 +1,57 @@
+#!/usr/bin/env bash
+# Reports time to first request and resident memory after it, for the default jar, the prod profile and the
+# prod profile with an application class data sharing archive. Needs MongoDB on localhost:27017.
+#   mvn -DskipTests package && perf/startup.sh [runs]
+set -euo pipefail
+
+RUNS=${1:-5}
+PORT=${PORT:-8080}
+URL="http://localhost:${PORT}/books?size=1"
+JAR=$(ls target/book-store-*.jar | grep -v original | head -1)
+OUT=target/startup
+ARGS="--server.port=${PORT} --bookstore.seed.enabled=false --bookstore.change-stream.enabled=false"
+
+# AppCDS needs plain jars on the class path, so the fat jar is unpacked and its classes packed into app.jar
+rm -rf "${OUT}" && mkdir -p "${OUT}/exploded"
+(cd "${OUT}/exploded" && jar xf "../../../${JAR}")
+jar cf "${OUT}/app.jar" -C "${OUT}/exploded/BOOT-INF/classes" .
+CP="${OUT}/app.jar:$(ls "${OUT}"/exploded/BOOT-INF/lib/*.jar | tr '\n' ':')"
+MAIN=$(sed -n 's/^Start-Class: *//p' "${OUT}/exploded/META-INF/MANIFEST.MF" | tr -d '\r')
+
+# starts the command, waits for the first successful request and prints "<ms> <rss KiB>"
+measure() {
+    local started pid
+    started=$(date +%s%N)
+    "$@" > "${OUT}/app.log" 2>&1 &
+    pid=$!
+    until curl -sf -o /dev/null "${URL}"; do
+        kill -0 ${pid} 2>/dev/null || { cat "${OUT}/app.log"; exit 1; }
+        sleep 0.05
+    done
+    echo "$(( ($(date +%s%N) - started) / 1000000 )) $(awk '/VmRSS/ {print $2}' /proc/${pid}/status)"
+    kill ${pid} && wait ${pid} 2>/dev/null || true
+}
+
+report() {
+    local label=$1
+    shift
+    for _ in $(seq "${RUNS}"); do measure "$@"; done | awk -v label="${label}" '
+        { ms += $1; rss += $2 }
+        END { printf "%-12s time to first request %6.0f ms   rss %6.0f MiB\n", label, ms / NR, rss / NR / 1024 }'
+}
+
+# class list of a training run, dumped into the archive the last mode starts from
+java -XX:DumpLoadedClassList="${OUT}/classes.lst" -cp "${CP}" "${MAIN}" --spring.profiles.active=prod ${ARGS} \
+    > "${OUT}/training.log" 2>&1 &
+TRAINING=$!
+until curl -sf -o /dev/null "${URL}"; do
+    kill -0 ${TRAINING} 2>/dev/null || { cat "${OUT}/training.log"; exit 1; }
+    sleep 0.2
+done
+kill ${TRAINING} && wait ${TRAINING} 2>/dev/null || true
+java -Xshare:dump -XX:SharedClassListFile="${OUT}/classes.lst" -XX:SharedArchiveFile="${OUT}/app.jsa" \
+    -cp "${CP}" > "${OUT}/dump.log" 2>&1
+
+report default java -jar "${JAR}" ${ARGS}
+report prod java -cp "${CP}" "${MAIN}" --spring.profiles.active=prod ${ARGS}
+report prod-cds java -XX:SharedArchiveFile="${OUT}/app.jsa" -cp "${CP}" "${MAIN}" --spring.profiles.active=prod ${ARGS}
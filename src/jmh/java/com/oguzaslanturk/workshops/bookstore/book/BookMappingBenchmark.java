@@ -0,0 +1,80 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+import org.modelmapper.ModelMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Book to BookDto mapping of a single book and of a full page, ModelMapper against {@link BookMapper}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BookMappingBenchmark {
+
+    private final ModelMapper modelMapper = new ModelMapper();
+
+    private final Book book = newBook(0);
+
+    /**
+     * The page the list benchmarks map, kept apart so its size does not also multiply the single book runs.
+     */
+    @State(Scope.Benchmark)
+    public static class Page {
+
+        @Param({"1", "1000"})
+        public int size;
+
+        private List<Book> books;
+
+        @Setup
+        public void setUp() {
+            books = IntStream.range(0, size)
+                    .mapToObj(BookMappingBenchmark::newBook)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    @Benchmark
+    public BookDto modelMapperSingle() {
+        return modelMapper.map(book, BookDto.class);
+    }
+
+    @Benchmark
+    public BookDto bookMapperSingle() {
+        return BookMapper.toDto(book);
+    }
+
+    @Benchmark
+    public List<BookDto> modelMapperPage(Page page) {
+        return page.books.stream()
+                .map(value -> modelMapper.map(value, BookDto.class))
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<BookDto> bookMapperPage(Page page) {
+        return BookMapper.toDtos(page.books);
+    }
+
+    private static Book newBook(int i) {
+        return new Book(String.valueOf(i), "Book number " + i, String.format("978%010d", i));
+    }
+}
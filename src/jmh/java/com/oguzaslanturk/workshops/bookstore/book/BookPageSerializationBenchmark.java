@@ -0,0 +1,83 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Jackson serialization of a {@link BookPageDto} response body at different page sizes, through the bean
+ * serializers and through the {@link BookJson} serializers. Run with {@code -prof gc} for the allocation per page.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BookPageSerializationBenchmark {
+
+    @Param({"20", "500", "5000"})
+    public int size;
+
+    @Param({"bean", "bookJson"})
+    public String serializer;
+
+    // discards the bytes as the servlet stream would send them, and stays open when Jackson closes it
+    private final OutputStream responseStream = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    private ObjectMapper objectMapper;
+
+    private BookPageDto page;
+
+    @Setup
+    public void setUp() {
+        final Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json();
+        if ("bookJson".equals(serializer)) {
+            builder.modules(new SimpleModule()
+                    .addSerializer(BookDto.class, new BookJson.BookDtoSerializer())
+                    .addSerializer(BookPageDto.class, new BookJson.BookPageDtoSerializer()));
+        }
+        objectMapper = builder.build();
+        final List<BookDto> books = IntStream.range(0, size)
+                .mapToObj(i -> new BookDto(String.valueOf(i), "Book number " + i, String.format("978%010d", i)))
+                .collect(Collectors.toList());
+        page = new BookPageDto(0, 100, 100L * size, books);
+    }
+
+    @Benchmark
+    public byte[] writePage() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(page);
+    }
+
+    @Benchmark
+    public void streamPage() throws IOException {
+        objectMapper.writeValue(responseStream, page);
+    }
+}
@@ -0,0 +1,103 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cache.support.NoOpCacheManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * {@link BookServiceImpl#getAll} without the database: query construction and paging against a stub-only
+ * {@link MongoTemplate} that answers every find with a full page.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BookQueryBenchmark {
+
+    @Param({"none", "name", "isbn", "both"})
+    public String filter;
+
+    @Param({"20", "500"})
+    public int size;
+
+    private BookServiceImpl bookService;
+
+    private BookDto searchData;
+
+    private BookSearchOptions options;
+
+    private Pageable pageable;
+
+    @Setup
+    public void setUp() {
+        final List<BookDto> books = IntStream.range(0, size)
+                .mapToObj(i -> new BookDto(String.valueOf(i), "Book number " + i, String.format("978%010d", i)))
+                .collect(Collectors.toList());
+        // stub-only mocks do not record invocations, so memory stays flat over millions of calls
+        final MongoTemplate mongoTemplate = mock(MongoTemplate.class, withSettings().stubOnly().defaultAnswer(RETURNS_DEEP_STUBS));
+        when(mongoTemplate.query(Book.class).as(BookDto.class).matching(any(Query.class)).all()).thenReturn(books);
+        when(mongoTemplate.count(any(Query.class), eq(Book.class))).thenReturn(100_000L);
+
+        final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        bookService = new BookServiceImpl(mock(BookRepository.class, withSettings().stubOnly()),
+                mongoTemplate,
+                mongoTemplate,
+                new BookCountCache(Duration.ofMinutes(1), 1000),
+                new ObjectMapper(),
+                Optional.empty(),
+                meterRegistry,
+                new BookQueryPlanner(size, 10_000, meterRegistry),
+                new NoOpCacheManager(),
+                new BookIsbnIndex(mongoTemplate, false));
+        searchData = BookDto.builder()
+                .name("name".equals(filter) || "both".equals(filter) ? "Lord of the Rings" : null)
+                .isbn("isbn".equals(filter) || "both".equals(filter) ? "9780261102385" : null)
+                .build();
+        options = new BookSearchOptions();
+        pageable = PageRequest.of(3, size, Sort.by("name"));
+    }
+
+    @Benchmark
+    public Document buildQuery() {
+        return BookQueries.addSearchCriteria(new Query().with(pageable), searchData, options.getMatch())
+                .getQueryObject();
+    }
+
+    @Benchmark
+    public BookPageDto getAll() {
+        return bookService.getAll(searchData, options, pageable);
+    }
+}
@@ -0,0 +1,106 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exact ISBN to id lookups in {@link IsbnIdTable} against a {@code HashMap<String, String>}, with the retained
+ * heap of each printed per entry after the setup. Only the structure under test is built in a trial, so the
+ * heap difference around the build is its footprint.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+public class IsbnIndexBenchmark {
+
+    private static final int PROBES = 1 << 16;
+
+    @Param({"1000000", "10000000"})
+    public int entries;
+
+    @Param({"table", "hashMap"})
+    public String index;
+
+    private IsbnIdTable table;
+
+    private Map<String, String> hashMap;
+
+    private String[] probes;
+
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final SplittableRandom random = new SplittableRandom(42);
+        final String[] isbns = new String[entries];
+        final String[] ids = new String[entries];
+        for (int i = 0; i < entries; i++) {
+            isbns[i] = String.format("978%010d", random.nextLong(10_000_000_000L));
+            ids[i] = new ObjectId().toHexString();
+        }
+        probes = new String[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            probes[i] = isbns[random.nextInt(entries)];
+        }
+
+        final long before = usedHeap();
+        if ("table".equals(index)) {
+            // sized the way BookIsbnIndex sizes it from the estimated count of books before loading
+            table = new IsbnIdTable(0);
+            table.ensureCapacity(entries);
+            for (int i = 0; i < entries; i++) {
+                table.put(IsbnIdTable.pack(isbns[i]), ids[i]);
+            }
+        } else {
+            hashMap = new HashMap<>();
+            for (int i = 0; i < entries; i++) {
+                // copies, so the map does not share the strings the table is built from
+                hashMap.put(new String(isbns[i]), new String(ids[i]));
+            }
+        }
+        final long retained = usedHeap() - before;
+        System.out.printf("%n%s with %d entries retains %d bytes, %.1f bytes per entry%s%n",
+                index, entries, retained, (double) retained / entries,
+                table != null ? String.format(" (%d bytes of arrays)", table.footprintBytes()) : "");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        table = null;
+        hashMap = null;
+    }
+
+    @Benchmark
+    public String lookup() {
+        final String isbn = probes[next++ & (PROBES - 1)];
+        return table != null ? table.get(IsbnIdTable.pack(isbn)) : hashMap.get(isbn);
+    }
+
+    private static long usedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,74 @@
+package com.oguzaslanturk.workshops.bookstore.exception;
+
+import ch.qos.logback.classic.Level;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.oguzaslanturk.workshops.bookstore.book.BookDto;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
+
+import javax.validation.ConstraintViolationException;
+import javax.validation.Validation;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link GlobalExceptionHandler} building and serializing error bodies. Logging is switched off so the
+ * numbers do not depend on the appender.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ErrorRenderingBenchmark {
+
+    private final GlobalExceptionHandler handler = new GlobalExceptionHandler();
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    private WebRequest request;
+
+    private ConstraintViolationException validationException;
+
+    @Setup
+    public void setUp() {
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.OFF);
+        request = new ServletWebRequest(new MockHttpServletRequest("GET", "/books/"));
+        validationException = new ConstraintViolationException(Validation.buildDefaultValidatorFactory()
+                .getValidator()
+                .validate(new BookDto(null, "Book", "123")));
+    }
+
+    @Benchmark
+    public byte[] invalidQuery() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(
+                handler.handleAllExceptions(new InvalidQueryException("Invalid cursor"), request).getBody());
+    }
+
+    @Benchmark
+    public byte[] unexpectedError() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(
+                handler.handleAllExceptions(new IllegalStateException("Unexpected"), request).getBody());
+    }
+
+    @Benchmark
+    public byte[] constraintViolation() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(
+                handler.handleConstraintViolation(validationException, request).getBody());
+    }
+}
@@ -1,28 +1,60 @@
 package com.oguzaslanturk.workshops.bookstore.book;
 
-import lombok.AllArgsConstructor;
+import lombok.AccessLevel;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.index.TextIndexed;
 import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.TextScore;
 
-import javax.persistence.Id;
 import javax.validation.constraints.NotBlank;
 
 @Document("books")
+@CompoundIndexes({
+        @CompoundIndex(name = "name_id", def = "{'name': 1, '_id': 1}", background = true),
+        @CompoundIndex(name = "normalizedName_id", def = "{'normalizedName': 1, '_id': 1}", background = true),
+        @CompoundIndex(name = "isbn_id", def = "{'isbn': 1, '_id': 1}", background = true)
+})
 @Data
 @NoArgsConstructor
-@AllArgsConstructor
 public class Book {
     @Id
     private String id;
 
     @NotBlank
+    @TextIndexed
     private String name;
 
+    @Setter(AccessLevel.NONE)
+    private String normalizedName;
+
+    @Indexed(name = "isbn_unique", unique = true, sparse = true, background = true)
     private String isbn;
 
+    @Version
+    private Long version;
+
+    @TextScore
+    private Float score;
+
+    public Book(String id, String name, String isbn) {
+        this.id = id;
+        this.isbn = isbn;
+        setName(name);
+    }
+
     public Book(String name, String isbn) {
+        this(null, name, isbn);
+    }
+
+    public void setName(String name) {
         this.name = name;
-        this.isbn = isbn;
+        this.normalizedName = BookNameNormalizer.normalize(name);
     }
 }
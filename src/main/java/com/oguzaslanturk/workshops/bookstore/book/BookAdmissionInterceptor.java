@@ -0,0 +1,152 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.oguzaslanturk.workshops.bookstore.config.AdaptiveConcurrencyLimit;
+import com.oguzaslanturk.workshops.bookstore.config.TokenBucket;
+import com.oguzaslanturk.workshops.bookstore.exception.TooManyRequestsException;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Admission control in front of {@link BookController}. Each request is charged a cost by operation against the
+ * token bucket of its client, and admitted only while the {@link AdaptiveConcurrencyLimit} has room for it.
+ * Rejected requests end in a {@link TooManyRequestsException}.
+ * <p>
+ * Clients are told apart by their remote address. Only with {@code trustClientHeaders}, when a gateway in front
+ * of the service sets them, are the {@code X-Tenant-Id} and {@code X-Client-Id} headers used instead; a client
+ * setting them itself would get a fresh bucket with every id it makes up.
+ */
+public class BookAdmissionInterceptor implements HandlerInterceptor {
+
+    public static final String TENANT_HEADER = "X-Tenant-Id";
+    public static final String CLIENT_HEADER = "X-Client-Id";
+
+    // id lookups are the unit, anything above it is served from what the concurrency limit keeps free of them
+    private static final int ID_LOOKUP_COST = 1;
+    private static final int LIST_COST = 2;
+    private static final int REGEX_COST = 8;
+    private static final int COUNT_COST = 3;
+    private static final Map<String, Integer> OPERATION_COSTS = Map.of(
+            "getById", ID_LOOKUP_COST,
+            "getByIds", 5,
+            "getAll", LIST_COST,
+            "getAllByCursor", LIST_COST,
+            "search", 5,
+            "export", 50,
+            "importNdjson", 50,
+            "importCsv", 50);
+    private static final int WRITE_COST = 2;
+    private static final String ADMITTED = BookAdmissionInterceptor.class.getName() + ".admitted";
+    private static final String DEFAULT_TENANT = "default";
+    private static final Duration SHED_RETRY_AFTER = Duration.ofSeconds(1);
+    private static final int MAX_CLIENTS = 100_000;
+
+    private final AdaptiveConcurrencyLimit concurrencyLimit;
+
+    private final double bucketCapacity;
+
+    private final double refillPerSecond;
+
+    private final boolean trustClientHeaders;
+
+    private final Ticker ticker;
+
+    private final Cache<String, TokenBucket> buckets;
+
+    public BookAdmissionInterceptor(AdaptiveConcurrencyLimit concurrencyLimit,
+                                    double bucketCapacity,
+                                    double refillPerSecond,
+                                    boolean trustClientHeaders,
+                                    Ticker ticker) {
+        this.concurrencyLimit = concurrencyLimit;
+        this.bucketCapacity = bucketCapacity;
+        this.refillPerSecond = refillPerSecond;
+        this.trustClientHeaders = trustClientHeaders;
+        this.ticker = ticker;
+        // a bucket left alone until it has refilled is the same as a new one, and beyond MAX_CLIENTS only the
+        // least recently used ones go
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(MAX_CLIENTS)
+                .expireAfterAccess(Duration.ofMillis((long) Math.ceil(bucketCapacity / refillPerSecond * 1000)))
+                .ticker(ticker)
+                .build();
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        // async dispatches of streamed exports were admitted with their first dispatch
+        if (request.getDispatcherType() == DispatcherType.ASYNC
+                || !(handler instanceof HandlerMethod)
+                || ((HandlerMethod) handler).getBeanType() != BookController.class) {
+            return true;
+        }
+        final int cost = getCost(((HandlerMethod) handler).getMethod().getName(), request);
+        final long now = ticker.read();
+        final long waitNanos = buckets.get(getClientKey(request),
+                        key -> new TokenBucket(bucketCapacity, refillPerSecond, now))
+                .tryConsume(cost, now);
+        if (waitNanos > 0) {
+            throw new TooManyRequestsException("Request rate of the client exceeded", Duration.ofNanos(waitNanos));
+        }
+        if (!concurrencyLimit.tryAcquire(cost > ID_LOOKUP_COST)) {
+            throw new TooManyRequestsException("Service is at its concurrency limit of "
+                    + concurrencyLimit.getLimit(), SHED_RETRY_AFTER);
+        }
+        request.setAttribute(ADMITTED, Boolean.TRUE);
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request,
+                                HttpServletResponse response,
+                                Object handler,
+                                Exception ex) {
+        if (request.getAttribute(ADMITTED) != null) {
+            request.removeAttribute(ADMITTED);
+            concurrencyLimit.release();
+        }
+    }
+
+    /**
+     * Name filters asking for {@link NameMatchMode#CONTAINS} run as regular expressions, and unless another count
+     * mode is asked for a list counts all matches.
+     */
+    static int getCost(String operation, HttpServletRequest request) {
+        final Integer cost = OPERATION_COSTS.get(operation);
+        if (cost == null) {
+            return WRITE_COST;
+        }
+        if (cost != LIST_COST) {
+            return cost;
+        }
+        int listCost = cost;
+        final String match = request.getParameter("match");
+        if (StringUtils.isNotBlank(request.getParameter("name"))
+                && NameMatchMode.CONTAINS.name().equalsIgnoreCase(match)) {
+            listCost += REGEX_COST;
+        }
+        final String count = request.getParameter("count");
+        if ("getAll".equals(operation) && (count == null || CountMode.EXACT.name().equalsIgnoreCase(count))) {
+            listCost += COUNT_COST;
+        }
+        return listCost;
+    }
+
+    private String getClientKey(HttpServletRequest request) {
+        if (!trustClientHeaders) {
+            return request.getRemoteAddr();
+        }
+        final String tenant = StringUtils.defaultIfBlank(request.getHeader(TENANT_HEADER), DEFAULT_TENANT);
+        final String client = StringUtils.defaultIfBlank(request.getHeader(CLIENT_HEADER), request.getRemoteAddr());
+        return tenant + '/' + client;
+    }
+}
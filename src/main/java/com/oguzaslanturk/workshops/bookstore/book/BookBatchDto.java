@@ -0,0 +1,16 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BookBatchDto implements Serializable {
+    private List<BookDto> books;
+    private List<String> missing;
+}
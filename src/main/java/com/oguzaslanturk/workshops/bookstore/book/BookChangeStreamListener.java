@@ -0,0 +1,233 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the books collection and publishes every insert, update and delete as a {@link BookChangedEvent}.
+ * The resume token is saved under {@code bookstore.change-stream.consumer} at most once per
+ * {@code bookstore.change-stream.token-save-interval}, so a restarted instance continues where it stopped.
+ * Every instance needs a consumer name of its own that stays the same across restarts, such as a StatefulSet
+ * ordinal. Instances sharing one would resume from each other's tokens and skip changes, so without one the
+ * listener logs a warning and stays idle.
+ * Change streams need a replica set, on a standalone server the listener logs a warning and stays idle.
+ */
+@Component
+public class BookChangeStreamListener implements SmartLifecycle {
+
+    public static final String TOKENS_COLLECTION = "changeStreamTokens";
+
+    private static final Logger log = LoggerFactory.getLogger(BookChangeStreamListener.class);
+
+    private static final String TOKEN = "token";
+    private static final String UPDATED_AT = "updatedAt";
+    private static final int CHANGE_STREAM_HISTORY_LOST = 286;
+    private static final Set<Integer> UNSUPPORTED = Set.of(40573, 40324);
+    private static final long RETRY_MILLIS = 5000;
+
+    private final MongoTemplate mongoTemplate;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final boolean enabled;
+
+    private final String consumer;
+
+    private final long tokenSaveIntervalNanos;
+
+    private volatile boolean running;
+
+    private Thread watcher;
+
+    private BsonDocument resumeToken;
+
+    private long tokenSavedAt;
+
+    public BookChangeStreamListener(MongoTemplate mongoTemplate,
+                                    ApplicationEventPublisher eventPublisher,
+                                    @Value("${bookstore.change-stream.enabled:true}") boolean enabled,
+                                    @Value("${bookstore.change-stream.consumer:}") String consumer,
+                                    @Value("${bookstore.change-stream.token-save-interval:1s}") Duration tokenSaveInterval) {
+        if (enabled && consumer.isBlank()) {
+            log.warn("bookstore.change-stream.consumer is not set, books changed by other instances will not be seen");
+        }
+        this.mongoTemplate = mongoTemplate;
+        this.eventPublisher = eventPublisher;
+        this.enabled = enabled && !consumer.isBlank();
+        this.consumer = consumer;
+        this.tokenSaveIntervalNanos = tokenSaveInterval.toNanos();
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        watcher = new Thread(this::watch, "book-change-stream");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (watcher != null) {
+            try {
+                watcher.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void watch() {
+        resumeToken = loadToken();
+        while (running) {
+            try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = open().cursor()) {
+                log.info("Watching the books collection for changes as {}", consumer);
+                while (running) {
+                    final ChangeStreamDocument<Document> change = cursor.tryNext();
+                    if (change != null && !publish(change)) {
+                        break;
+                    }
+                    // the cursor's token also advances while nothing changes
+                    if (cursor.getResumeToken() != null) {
+                        resumeToken = cursor.getResumeToken();
+                    }
+                    saveTokenIfDue(false);
+                }
+                saveTokenIfDue(true);
+            } catch (MongoCommandException e) {
+                if (UNSUPPORTED.contains(e.getErrorCode())) {
+                    log.warn("Change streams are not supported by the server, books changed by other instances "
+                            + "will not be seen: {}", e.getErrorMessage());
+                    running = false;
+                } else if (e.getErrorCode() == CHANGE_STREAM_HISTORY_LOST) {
+                    log.warn("Resume token of {} is no longer in the oplog, resetting", consumer);
+                    resumeToken = null;
+                    fire(BookChangedEvent.Type.RESET, null);
+                } else {
+                    retryLater(e);
+                }
+            } catch (MongoException e) {
+                retryLater(e);
+            }
+        }
+    }
+
+    private ChangeStreamIterable<Document> open() {
+        final ChangeStreamIterable<Document> changes = mongoTemplate
+                .getCollection(mongoTemplate.getCollectionName(Book.class))
+                .watch()
+                .maxAwaitTime(1, TimeUnit.SECONDS);
+        return resumeToken != null ? changes.resumeAfter(resumeToken) : changes;
+    }
+
+    /**
+     * Returns {@code false} when the stream was invalidated and has to be reopened.
+     */
+    private boolean publish(ChangeStreamDocument<Document> change) {
+        final String id = change.getDocumentKey() != null ? toId(change.getDocumentKey().get("_id")) : null;
+        switch (change.getOperationType()) {
+            case INSERT:
+                fire(BookChangedEvent.Type.INSERTED, id);
+                return true;
+            case UPDATE:
+            case REPLACE:
+                fire(BookChangedEvent.Type.UPDATED, id);
+                return true;
+            case DELETE:
+                fire(BookChangedEvent.Type.DELETED, id);
+                return true;
+            case INVALIDATE:
+                // the stream cannot be resumed after an invalidate, a new one starts from now
+                resumeToken = null;
+                fire(BookChangedEvent.Type.RESET, null);
+                return false;
+            case DROP:
+            case RENAME:
+            case DROP_DATABASE:
+                fire(BookChangedEvent.Type.RESET, null);
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    private void fire(BookChangedEvent.Type type, String id) {
+        try {
+            eventPublisher.publishEvent(new BookChangedEvent(type, id));
+        } catch (RuntimeException e) {
+            // a failing listener must not stop the stream for the others
+            log.error("Handling {} of book {} failed", type, id, e);
+        }
+    }
+
+    private static String toId(BsonValue id) {
+        if (id == null) {
+            return null;
+        }
+        if (id.isObjectId()) {
+            return id.asObjectId().getValue().toHexString();
+        }
+        return id.isString() ? id.asString().getValue() : id.toString();
+    }
+
+    private BsonDocument loadToken() {
+        final Document saved = mongoTemplate.findById(consumer, Document.class, TOKENS_COLLECTION);
+        return saved != null && saved.get(TOKEN) instanceof Document
+                ? BsonDocument.parse(saved.get(TOKEN, Document.class).toJson())
+                : null;
+    }
+
+    private void saveTokenIfDue(boolean force) {
+        if (resumeToken == null || (!force && System.nanoTime() - tokenSavedAt < tokenSaveIntervalNanos)) {
+            return;
+        }
+        try {
+            mongoTemplate.upsert(Query.query(Criteria.where("_id").is(consumer)),
+                    new Update().set(TOKEN, Document.parse(resumeToken.toJson())).set(UPDATED_AT, new Date()),
+                    TOKENS_COLLECTION);
+            tokenSavedAt = System.nanoTime();
+        } catch (MongoException e) {
+            log.warn("Could not save the change stream resume token of {}", consumer, e);
+        }
+    }
+
+    private void retryLater(MongoException e) {
+        log.warn("Watching the books collection failed, retrying in {} ms", RETRY_MILLIS, e);
+        try {
+            Thread.sleep(RETRY_MILLIS);
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
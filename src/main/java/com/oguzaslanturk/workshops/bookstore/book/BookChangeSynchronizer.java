@@ -0,0 +1,40 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the local books cache and count cache consistent with changes made through any instance.
+ */
+@Component
+public class BookChangeSynchronizer {
+
+    private final CacheManager cacheManager;
+
+    private final BookCountCache countCache;
+
+    public BookChangeSynchronizer(CacheManager cacheManager, BookCountCache countCache) {
+        this.cacheManager = cacheManager;
+        this.countCache = countCache;
+    }
+
+    // runs first, so other listeners of the change already read fresh values
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onBookChanged(BookChangedEvent event) {
+        final Cache cache = cacheManager.getCache(BookServiceImpl.BOOKS_CACHE);
+        if (cache != null) {
+            if (event.getType() == BookChangedEvent.Type.RESET) {
+                cache.clear();
+            } else {
+                cache.evict(event.getId());
+            }
+        }
+        // an update may rename a book in or out of a name filter, so every change can move a count
+        countCache.invalidateAll();
+    }
+}
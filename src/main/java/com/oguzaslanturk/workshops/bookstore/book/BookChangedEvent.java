@@ -0,0 +1,29 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * A change to the books collection seen on the change stream, made by this or any other instance.
+ * Listeners keep local derived state such as caches, indexes and counters consistent with it.
+ */
+@Data
+@AllArgsConstructor
+public class BookChangedEvent {
+
+    public enum Type {
+        INSERTED,
+        UPDATED,
+        DELETED,
+        /**
+         * The collection was dropped or renamed, or changes may have been missed: rebuild everything.
+         */
+        RESET
+    }
+
+    private Type type;
+    /**
+     * Id of the changed book, {@code null} for {@link Type#RESET}.
+     */
+    private String id;
+}
@@ -6,23 +6,51 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 
 @RestController
+@Profile("!reactive")
 @RequestMapping(path = "/books", produces = MediaType.APPLICATION_JSON_VALUE)
 public class BookController {
 
     private final BookService bookService;
 
+    private final BookImportService bookImportService;
+
+    private final BookQueryPlanner queryPlanner;
+
+    private final CacheControl bookCacheControl;
+
+    private final CacheControl pageCacheControl;
+
     @Autowired
-    public BookController(BookService bookService) {
+    public BookController(BookService bookService,
+                          BookImportService bookImportService,
+                          BookQueryPlanner queryPlanner,
+                          @Value("${bookstore.http.book-max-age:60s}") Duration bookMaxAge,
+                          @Value("${bookstore.http.page-max-age:0s}") Duration pageMaxAge) {
         this.bookService = bookService;
+        this.bookImportService = bookImportService;
+        this.queryPlanner = queryPlanner;
+        this.bookCacheControl = getCacheControl(bookMaxAge);
+        this.pageCacheControl = getCacheControl(pageMaxAge);
     }
 
     @GetMapping(path = "/{id}")
@@ -36,17 +64,48 @@ public class BookController {
                                     schema = @Schema(implementation = BookDto.class))
                     }
             ),
+            @ApiResponse(responseCode = "304", description = "The book still matches If-None-Match", content = @Content),
             @ApiResponse(responseCode = "404", description = "Book not found", content = @Content)
     })
     public ResponseEntity<BookDto> getById(@PathVariable String id) {
         BookDto book = bookService.getById(id);
-        return book != null ? ResponseEntity.ok(book) : ResponseEntity.notFound().build();
+        return book != null
+                ? withETag(ResponseEntity.ok().cacheControl(bookCacheControl), book)
+                : ResponseEntity.notFound().build();
     }
 
 
+    @PostMapping(path = "/batch-get", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "Get up to " + BookIdsDto.MAX_IDS + " books by id in one request, in the requested order")
+    public ResponseEntity<BookBatchDto> getByIds(@RequestBody @Valid BookIdsDto bookIds) {
+        return ResponseEntity.ok(bookService.getByIds(bookIds.getIds()));
+    }
+
     @GetMapping("/")
-    public ResponseEntity<BookPageDto> getAll(BookDto bookDto, Pageable pageable) {
-        return ResponseEntity.ok(bookService.getAll(bookDto, pageable));
+    public ResponseEntity<BookPageDto> getAll(BookDto bookDto, BookSearchOptions options, Pageable pageable) {
+        // a matching If-None-Match turns the response into a 304
+        final BookPageDto page = bookService.getAll(bookDto, options, pageable);
+        return ResponseEntity.ok()
+                .cacheControl(pageCacheControl)
+                .eTag(BookETags.of(page))
+                .body(page);
+    }
+
+    @GetMapping(path = "/", params = "cursor")
+    @Operation(summary = "Get books page by page, seeking from the continuation token of the previous page")
+    public ResponseEntity<BookCursorPageDto> getAllByCursor(BookDto bookDto,
+                                                            BookSearchOptions options,
+                                                            @RequestParam String cursor,
+                                                            Pageable pageable) {
+        return ResponseEntity.ok(bookService.getAllByCursor(bookDto, options, cursor, pageable));
+    }
+
+    @GetMapping("/search")
+    @Operation(summary = "Search books by name through the name indexes, best matches first")
+    public ResponseEntity<BookSearchResultDto> search(@RequestParam String q,
+                                                      @RequestParam(defaultValue = "TOKEN") NameMatchMode mode,
+                                                      Pageable pageable) {
+        return ResponseEntity.ok(bookService.search(q, mode, pageable));
     }
 
     @PostMapping("/")
@@ -54,20 +113,63 @@ public class BookController {
         return ResponseEntity.status(HttpStatus.CREATED).body(bookService.save(bookDto));
     }
 
+    @GetMapping(path = "/export", produces = {MediaType.APPLICATION_NDJSON_VALUE, BookDataFormat.TEXT_CSV_VALUE})
+    @Operation(summary = "Stream all books matching the filters as newline delimited JSON or CSV")
+    public ResponseEntity<StreamingResponseBody> export(BookDto bookDto,
+                                                        BookSearchOptions options,
+                                                        @RequestParam(defaultValue = "NDJSON") BookDataFormat format,
+                                                        Sort sort) {
+        // planned before the 200 goes out, an unsupported sort is rejected instead of failing midstream
+        final Sort plannedSort = queryPlanner.planSort(sort);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(format.getMediaType()))
+                .body(out -> bookService.exportAll(bookDto, options, plannedSort, format, out));
+    }
+
+    @PostMapping(path = "/import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "Import books from newline delimited JSON, upserting them by ISBN")
+    public ResponseEntity<BookImportResultDto> importNdjson(InputStream body) throws IOException {
+        return ResponseEntity.ok(bookImportService.importBooks(
+                new InputStreamReader(body, StandardCharsets.UTF_8), BookDataFormat.NDJSON));
+    }
+
+    @PostMapping(path = "/import", consumes = BookDataFormat.TEXT_CSV_VALUE)
+    @Operation(summary = "Import books from CSV with an optional header line, upserting them by ISBN")
+    public ResponseEntity<BookImportResultDto> importCsv(InputStream body) throws IOException {
+        return ResponseEntity.ok(bookImportService.importBooks(
+                new InputStreamReader(body, StandardCharsets.UTF_8), BookDataFormat.CSV));
+    }
+
     @PutMapping("/")
-    public ResponseEntity<BookDto> update(@RequestBody @Valid BookDto bookDto) {
-        if (bookService.getById(bookDto.getId()) == null) {
-            return ResponseEntity.notFound().build();
-        }
-        return ResponseEntity.ok(bookService.update(bookDto));
+    @Operation(summary = "Replace a book, only in the version named by If-Match when it is sent")
+    public ResponseEntity<BookDto> update(@RequestBody @Valid BookDto bookDto,
+                                          @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        final BookDto book = bookService.update(bookDto, BookETags.parseVersion(ifMatch));
+        return book != null ? withETag(ResponseEntity.ok(), book) : ResponseEntity.notFound().build();
+    }
+
+    @PatchMapping("/{id}")
+    @Operation(summary = "Change only the fields present in the body, in the version named by If-Match when sent")
+    public ResponseEntity<BookDto> patch(@PathVariable String id,
+                                         @RequestBody @Valid BookDto changes,
+                                         @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        final BookDto book = bookService.patch(id, changes, BookETags.parseVersion(ifMatch));
+        return book != null ? withETag(ResponseEntity.ok(), book) : ResponseEntity.notFound().build();
     }
 
     @DeleteMapping("/{id}")
     public ResponseEntity<?> deleteById(@PathVariable String id) {
-        if (bookService.getById(id) == null) {
-            return ResponseEntity.notFound().build();
-        }
-        bookService.deleteById(id);
-        return ResponseEntity.noContent().build();
+        return bookService.deleteById(id) ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+    }
+
+    private static ResponseEntity<BookDto> withETag(ResponseEntity.BodyBuilder response, BookDto book) {
+        final String eTag = BookETags.of(book);
+        return eTag != null ? response.eTag(eTag).body(book) : response.body(book);
+    }
+
+    private static CacheControl getCacheControl(Duration maxAge) {
+        return maxAge.isZero()
+                ? CacheControl.noCache()
+                : CacheControl.maxAge(maxAge).cachePublic().mustRevalidate();
     }
 }
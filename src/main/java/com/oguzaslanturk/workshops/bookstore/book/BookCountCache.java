@@ -0,0 +1,46 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Recent total counts per filter, kept for a fixed time to live. Beyond {@code maxEntries} filters the least
+ * used counts are dropped first.
+ */
+@Component
+public class BookCountCache {
+
+    private final Cache<String, Long> counts;
+
+    @Autowired
+    public BookCountCache(@Value("${bookstore.count-cache.ttl:60s}") Duration ttl,
+                          @Value("${bookstore.count-cache.max-entries:1000}") int maxEntries) {
+        this(ttl, maxEntries, Ticker.systemTicker());
+    }
+
+    BookCountCache(Duration ttl, int maxEntries, Ticker ticker) {
+        this.counts = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(ttl)
+                .ticker(ticker)
+                .build();
+    }
+
+    public Long get(String filter) {
+        return counts.getIfPresent(filter);
+    }
+
+    public void put(String filter, long count) {
+        counts.put(filter, count);
+    }
+
+    public void invalidateAll() {
+        counts.invalidateAll();
+    }
+}
@@ -0,0 +1,124 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reads and writes CSV records of books as described in RFC 4180: comma separated, fields
+ * optionally enclosed in double quotes and quotes escaped by doubling them. A quoted field may hold line breaks,
+ * so a record can span lines; see {@link #isUnterminated(boolean, String)}.
+ */
+public final class BookCsv {
+
+    public static final String ID = "id";
+    public static final String NAME = "name";
+    public static final String ISBN = "isbn";
+    public static final List<String> DEFAULT_COLUMNS = List.of(NAME, ISBN);
+
+    private static final char SEPARATOR = ',';
+    private static final char QUOTE = '"';
+
+    private BookCsv() {
+    }
+
+    public static List<String> parseLine(String line) {
+        final List<String> values = new ArrayList<>();
+        final StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            final char c = line.charAt(i);
+            if (quoted) {
+                if (c != QUOTE) {
+                    value.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == QUOTE) {
+                    value.append(QUOTE);
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == QUOTE) {
+                quoted = true;
+            } else if (c == SEPARATOR) {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quoted field");
+        }
+        values.add(value.toString());
+        return values;
+    }
+
+    /**
+     * Whether a record still ends inside a quoted field after the line, given whether it did before it, so its next
+     * line belongs to it. Quotes only appear around fields and doubled inside them, so each one opens or closes.
+     */
+    public static boolean isUnterminated(boolean quoted, String line) {
+        boolean unterminated = quoted;
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) == QUOTE) {
+                unterminated = !unterminated;
+            }
+        }
+        return unterminated;
+    }
+
+    public static String formatLine(List<String> values) {
+        final StringBuilder line = new StringBuilder();
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                line.append(SEPARATOR);
+            }
+            final String value = values.get(i);
+            if (value == null) {
+                continue;
+            }
+            if (value.indexOf(SEPARATOR) >= 0 || value.indexOf(QUOTE) >= 0
+                    || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+                line.append(QUOTE).append(value.replace("\"", "\"\"")).append(QUOTE);
+            } else {
+                line.append(value);
+            }
+        }
+        return line.toString();
+    }
+
+    /**
+     * Column names of a header line, or {@code null} when the line holds values.
+     */
+    public static List<String> parseHeader(String line) {
+        final List<String> columns = new ArrayList<>();
+        for (String value : parseLine(line)) {
+            columns.add(value.trim().toLowerCase(Locale.ROOT));
+        }
+        return columns.contains(NAME) ? columns : null;
+    }
+
+    public static BookDto toBookDto(List<String> values, List<String> columns) {
+        if (values.size() != columns.size()) {
+            throw new IllegalArgumentException("Expected " + columns.size() + " fields but found " + values.size());
+        }
+        final BookDto bookDto = new BookDto();
+        for (int i = 0; i < columns.size(); i++) {
+            final String value = values.get(i).trim();
+            switch (columns.get(i)) {
+                case ID:
+                    bookDto.setId(value.isEmpty() ? null : value);
+                    break;
+                case NAME:
+                    bookDto.setName(value);
+                    break;
+                case ISBN:
+                    bookDto.setIsbn(value.isEmpty() ? null : value);
+                    break;
+                default:
+                    break;
+            }
+        }
+        return bookDto;
+    }
+}
@@ -0,0 +1,52 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+import com.oguzaslanturk.workshops.bookstore.exception.InvalidQueryException;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.data.domain.Sort;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position of the last book of a keyset page. It is handed to clients as an opaque,
+ * url-safe token and carries the sort it was created for, so it cannot be replayed
+ * against a different ordering.
+ */
+@Getter
+@AllArgsConstructor
+public class BookCursor {
+
+    private static final String SEPARATOR = "\n";
+    private static final int PARTS = 4;
+    public static final String INVALID_CURSOR = "Invalid cursor";
+
+    private final String property;
+    private final Sort.Direction direction;
+    private final String id;
+    private final String value;
+
+    public boolean matches(Sort.Order order) {
+        return property.equals(order.getProperty()) && direction == order.getDirection();
+    }
+
+    public String encode() {
+        final String raw = String.join(SEPARATOR, property, direction.name(), id, value != null ? value : "");
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static BookCursor decode(String token) {
+        final String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(SEPARATOR, PARTS);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidQueryException(INVALID_CURSOR);
+        }
+        if (parts.length != PARTS) {
+            throw new InvalidQueryException(INVALID_CURSOR);
+        }
+        final Sort.Direction direction = Sort.Direction.fromOptionalString(parts[1])
+                .orElseThrow(() -> new InvalidQueryException(INVALID_CURSOR));
+        return new BookCursor(parts[0], direction, parts[2], parts[3]);
+    }
+}
@@ -0,0 +1,15 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class BookCursorPageDto implements Serializable {
+    private int size;
+    private String nextCursor;
+    private List<BookDto> books;
+}
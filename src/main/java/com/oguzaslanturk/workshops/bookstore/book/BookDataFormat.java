@@ -0,0 +1,23 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+import org.springframework.http.MediaType;
+
+/**
+ * Line based formats books are imported from and exported to, one book per line.
+ */
+public enum BookDataFormat {
+    NDJSON(MediaType.APPLICATION_NDJSON_VALUE),
+    CSV(BookDataFormat.TEXT_CSV_VALUE);
+
+    public static final String TEXT_CSV_VALUE = "text/csv";
+
+    private final String mediaType;
+
+    BookDataFormat(String mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+}
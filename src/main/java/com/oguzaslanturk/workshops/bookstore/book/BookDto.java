@@ -6,6 +6,7 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.Size;
 
 @Data
@@ -13,8 +14,21 @@ import javax.validation.constraints.Size;
 @NoArgsConstructor
 @Builder
 public class BookDto {
+    /**
+     * Validation group of imported books, which need everything a new book needs.
+     */
+    public interface Imported {
+    }
+
     private String id;
+    @NotBlank(groups = Imported.class)
     private String name;
     @Size(min = 11, max = 13)
     private String isbn;
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private Long version;
+
+    public BookDto(String id, String name, String isbn) {
+        this(id, name, isbn, null);
+    }
 }
@@ -0,0 +1,49 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+/**
+ * Entity tags derived from the {@code version} of books. A single book is tagged with its version, a page
+ * with a weak tag over the versions of its books and its totals.
+ */
+public final class BookETags {
+
+    private static final String WEAK_PREFIX = "W/";
+    private static final String ANY = "*";
+
+    private BookETags() {
+    }
+
+    public static String of(BookDto book) {
+        return book.getVersion() != null ? "\"" + book.getVersion() + "\"" : null;
+    }
+
+    public static String of(BookPageDto page) {
+        long hash = 17;
+        hash = 31 * hash + page.getCurrentPage();
+        hash = 31 * hash + page.getTotalPages();
+        hash = 31 * hash + page.getTotalItems();
+        hash = 31 * hash + (page.isTotalExact() ? 1 : 0);
+        for (BookDto book : page.getBooks()) {
+            hash = 31 * hash + (book.getId() != null ? book.getId().hashCode() : 0);
+            hash = 31 * hash + (book.getVersion() != null ? book.getVersion().hashCode() : 0);
+        }
+        return WEAK_PREFIX + "\"" + Long.toHexString(hash) + "\"";
+    }
+
+    /**
+     * The book version an {@code If-Match} header requires, {@code null} when any version will do.
+     */
+    public static Long parseVersion(String ifMatch) {
+        if (StringUtils.isBlank(ifMatch) || ANY.equals(ifMatch.trim())) {
+            return null;
+        }
+        final String tag = StringUtils.removeStart(ifMatch.trim(), WEAK_PREFIX);
+        try {
+            return Long.valueOf(StringUtils.strip(tag, "\""));
+        } catch (NumberFormatException e) {
+            throw new OptimisticLockingFailureException("If-Match " + ifMatch + " does not name a version of the book");
+        }
+    }
+}
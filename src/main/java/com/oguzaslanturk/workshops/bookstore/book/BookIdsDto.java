@@ -0,0 +1,22 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.Size;
+import java.io.Serializable;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BookIdsDto implements Serializable {
+    public static final int MAX_IDS = 100;
+
+    @NotEmpty
+    @Size(max = MAX_IDS)
+    private List<@NotBlank String> ids;
+}
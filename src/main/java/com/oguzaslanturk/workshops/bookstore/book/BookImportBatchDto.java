@@ -0,0 +1,19 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BookImportBatchDto implements Serializable {
+    private int batch;
+    private int size;
+    private int inserted;
+    private int upserted;
+    private int modified;
+    private int failed;
+}
@@ -0,0 +1,19 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BookImportResultDto implements Serializable {
+    private long records;
+    private long rejected;
+    private List<BookImportBatchDto> batches = new ArrayList<>();
+    private List<BookImportRejectionDto> rejections = new ArrayList<>();
+}
@@ -0,0 +1,8 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+import java.io.IOException;
+import java.io.Reader;
+
+public interface BookImportService {
+    BookImportResultDto importBooks(Reader reader, BookDataFormat format) throws IOException;
+}
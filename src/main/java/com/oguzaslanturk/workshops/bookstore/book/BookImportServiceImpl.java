@@ -0,0 +1,215 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import javax.validation.Validator;
+import javax.validation.groups.Default;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.oguzaslanturk.workshops.bookstore.exception.GlobalExceptionHandler.FIELD_ERROR_SEPARATOR;
+
+/**
+ * Reads books line by line and writes them in unordered bulk batches, so an upload is never held
+ * in memory as a whole. Books with an ISBN are upserted by it, books without one are inserted.
+ * CSV records with line breaks in quoted values are read over as many lines as they span, each break read
+ * back as {@code \n}, and reported by the line they start on. A record running past
+ * {@code bookstore.import.max-record-lines} or {@code max-record-chars}, such as one opened by a stray quote,
+ * is rejected and reading resumes at the next line.
+ */
+@Service
+public class BookImportServiceImpl implements BookImportService {
+
+    private final MongoTemplate mongoTemplate;
+
+    private final ObjectMapper objectMapper;
+
+    private final Validator validator;
+
+    private final BookCountCache countCache;
+
+    private final BookIsbnIndex isbnIndex;
+
+    private final int batchSize;
+
+    private final int maxReportedRejections;
+
+    private final int maxRecordLines;
+
+    private final int maxRecordChars;
+
+    @Autowired
+    public BookImportServiceImpl(MongoTemplate mongoTemplate,
+                                 ObjectMapper objectMapper,
+                                 Validator validator,
+                                 BookCountCache countCache,
+                                 BookIsbnIndex isbnIndex,
+                                 @Value("${bookstore.import.batch-size:1000}") int batchSize,
+                                 @Value("${bookstore.import.max-reported-rejections:1000}") int maxReportedRejections,
+                                 @Value("${bookstore.import.max-record-lines:100}") int maxRecordLines,
+                                 @Value("${bookstore.import.max-record-chars:100000}") int maxRecordChars) {
+        this.mongoTemplate = mongoTemplate;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.countCache = countCache;
+        this.isbnIndex = isbnIndex;
+        this.batchSize = batchSize;
+        this.maxReportedRejections = maxReportedRejections;
+        this.maxRecordLines = maxRecordLines;
+        this.maxRecordChars = maxRecordChars;
+    }
+
+    @Override
+    @CacheEvict(cacheNames = BookServiceImpl.BOOKS_CACHE, allEntries = true)
+    public BookImportResultDto importBooks(Reader reader, BookDataFormat format) throws IOException {
+        final BookImportResultDto result = new BookImportResultDto();
+        final List<Book> batch = new ArrayList<>(batchSize);
+        final List<Long> batchLines = new ArrayList<>(batchSize);
+        final BufferedReader lines = new BufferedReader(reader);
+        List<String> columns = BookCsv.DEFAULT_COLUMNS;
+
+        long lineNumber = 0;
+        String line;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            if (StringUtils.isBlank(line)) {
+                continue;
+            }
+            final long recordLine = lineNumber;
+            if (format == BookDataFormat.CSV && BookCsv.isUnterminated(false, line)) {
+                final StringBuilder record = new StringBuilder(line);
+                boolean quoted = true;
+                int recordLines = 1;
+                String next;
+                while (quoted && recordLines < maxRecordLines && record.length() <= maxRecordChars
+                        && (next = lines.readLine()) != null) {
+                    lineNumber++;
+                    recordLines++;
+                    record.append('\n').append(next);
+                    quoted = BookCsv.isUnterminated(true, next);
+                }
+                if (record.length() > maxRecordChars || quoted && recordLines == maxRecordLines) {
+                    result.setRecords(result.getRecords() + 1);
+                    reject(result, recordLine, Collections.singletonList(record.length() > maxRecordChars
+                            ? "Record is longer than " + maxRecordChars + " characters"
+                            : "Record spans more than " + maxRecordLines + " lines"));
+                    continue;
+                }
+                line = record.toString();
+            }
+            if (format == BookDataFormat.CSV && result.getRecords() == 0 && result.getRejected() == 0) {
+                final List<String> header = BookCsv.parseHeader(line);
+                if (header != null) {
+                    columns = header;
+                    continue;
+                }
+            }
+            result.setRecords(result.getRecords() + 1);
+
+            final BookDto record;
+            try {
+                record = format == BookDataFormat.CSV
+                        ? BookCsv.toBookDto(BookCsv.parseLine(line), columns)
+                        : objectMapper.readValue(line, BookDto.class);
+            } catch (JsonProcessingException e) {
+                reject(result, recordLine, Collections.singletonList(e.getOriginalMessage()));
+                continue;
+            } catch (IllegalArgumentException e) {
+                reject(result, recordLine, Collections.singletonList(e.getMessage()));
+                continue;
+            }
+
+            final List<String> errors = validator.validate(record, Default.class, BookDto.Imported.class)
+                    .stream()
+                    .map(violation -> violation.getPropertyPath() + FIELD_ERROR_SEPARATOR + violation.getMessage())
+                    .collect(Collectors.toList());
+            if (!errors.isEmpty()) {
+                reject(result, recordLine, errors);
+                continue;
+            }
+
+            batch.add(new Book(record.getName(), StringUtils.trimToNull(record.getIsbn())));
+            batchLines.add(recordLine);
+            if (batch.size() == batchSize) {
+                write(batch, batchLines, result);
+                batch.clear();
+                batchLines.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            write(batch, batchLines, result);
+        }
+
+        countCache.invalidateAll();
+        return result;
+    }
+
+    private void write(List<Book> books, List<Long> lineNumbers, BookImportResultDto result) {
+        final BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Book.class);
+        for (Book book : books) {
+            if (book.getIsbn() == null) {
+                book.setVersion(0L);
+                bulk.insert(book);
+            } else {
+                bulk.upsert(Query.query(Criteria.where("isbn").is(book.getIsbn())),
+                        new Update()
+                                .set("name", book.getName())
+                                .set("normalizedName", book.getNormalizedName())
+                                .inc("version", 1));
+            }
+        }
+
+        BulkWriteResult writeResult;
+        List<BulkWriteError> errors = Collections.emptyList();
+        try {
+            writeResult = bulk.execute();
+        } catch (BulkOperationException e) {
+            writeResult = e.getResult();
+            errors = e.getErrors();
+        }
+        for (BulkWriteError error : errors) {
+            reject(result, lineNumbers.get(error.getIndex()), Collections.singletonList(error.getMessage()));
+        }
+        // books matched by their isbn keep their id, only the ones upserted as new need an index entry
+        for (BulkWriteUpsert upsert : writeResult.getUpserts()) {
+            if (upsert.getId().isObjectId()) {
+                isbnIndex.put(books.get(upsert.getIndex()).getIsbn(),
+                        upsert.getId().asObjectId().getValue().toHexString());
+            }
+        }
+
+        result.getBatches().add(new BookImportBatchDto(result.getBatches().size() + 1,
+                books.size(),
+                writeResult.getInsertedCount(),
+                writeResult.getUpserts().size(),
+                writeResult.getModifiedCount(),
+                errors.size()));
+    }
+
+    private void reject(BookImportResultDto result, long lineNumber, List<String> errors) {
+        result.setRejected(result.getRejected() + 1);
+        if (result.getRejections().size() < maxReportedRejections) {
+            result.getRejections().add(new BookImportRejectionDto(lineNumber, errors));
+        }
+    }
+}
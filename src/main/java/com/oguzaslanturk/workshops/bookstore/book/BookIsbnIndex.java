@@ -0,0 +1,129 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+
+import static com.oguzaslanturk.workshops.bookstore.book.BookQueries.ISBN_FIELD;
+
+/**
+ * Resolves exact ISBN lookups to book ids without a query, when {@code bookstore.isbn-index.enabled} is set.
+ * The index is loaded from the books collection once the application is ready and kept current by the writes
+ * of this instance and the {@link BookChangedEvent}s of all others. Entries may be stale, callers verify the
+ * book they load and {@link #remove(String, String)} entries that no longer match.
+ */
+@Component
+public class BookIsbnIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(BookIsbnIndex.class);
+
+    private static final int LOAD_BATCH_SIZE = 5000;
+
+    private final MongoTemplate mongoTemplate;
+
+    private final boolean enabled;
+
+    private final IsbnIdTable table = new IsbnIdTable(0);
+
+    private volatile boolean ready;
+
+    public BookIsbnIndex(MongoTemplate mongoTemplate,
+                         @Value("${bookstore.isbn-index.enabled:false}") boolean enabled) {
+        this.mongoTemplate = mongoTemplate;
+        this.enabled = enabled;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadInBackground() {
+        if (!enabled) {
+            return;
+        }
+        CompletableFuture.runAsync(this::load)
+                .exceptionally(e -> {
+                    log.error("Loading the ISBN index failed, ISBN lookups keep querying the books collection", e);
+                    return null;
+                });
+    }
+
+    public void load() {
+        final long started = System.nanoTime();
+        table.ensureCapacity((int) Math.min(Integer.MAX_VALUE, mongoTemplate.estimatedCount(Book.class)));
+        final Query query = new Query(Criteria.where(ISBN_FIELD).exists(true)).cursorBatchSize(LOAD_BATCH_SIZE);
+        query.fields().include(ISBN_FIELD);
+        try (CloseableIterator<Book> books = mongoTemplate.stream(query, Book.class)) {
+            while (books.hasNext()) {
+                final Book book = books.next();
+                put(book.getIsbn(), book.getId());
+            }
+        }
+        ready = true;
+        log.info("Loaded {} ISBNs into the ISBN index in {} ms, using {} bytes",
+                table.size(), (System.nanoTime() - started) / 1_000_000, table.footprintBytes());
+    }
+
+    @EventListener
+    public void onBookChanged(BookChangedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        switch (event.getType()) {
+            case RESET:
+                ready = false;
+                table.clear();
+                loadInBackground();
+                break;
+            case DELETED:
+                // the isbn is gone with the document, lookups drop the entry when the book is not found
+                break;
+            default:
+                final Query query = BookQueries.getVersionedIdQuery(event.getId(), null);
+                query.fields().include(ISBN_FIELD);
+                final Book book = mongoTemplate.findOne(query, Book.class);
+                if (book != null) {
+                    put(book.getIsbn(), book.getId());
+                }
+                break;
+        }
+    }
+
+    /**
+     * Returns the id of the book last seen with the isbn, {@code null} when the index has none or is not loaded yet.
+     */
+    public String findId(String isbn) {
+        if (!ready) {
+            return null;
+        }
+        final long key = IsbnIdTable.pack(isbn);
+        return key == IsbnIdTable.NOT_PACKABLE ? null : table.get(key);
+    }
+
+    public void put(String isbn, String id) {
+        final long key = IsbnIdTable.pack(isbn);
+        if (enabled && id != null && key != IsbnIdTable.NOT_PACKABLE) {
+            table.put(key, id);
+        }
+    }
+
+    /**
+     * Drops the entry of the isbn if it still points to the id.
+     */
+    public void remove(String isbn, String id) {
+        final long key = IsbnIdTable.pack(isbn);
+        if (enabled && id != null && key != IsbnIdTable.NOT_PACKABLE) {
+            table.remove(key, id);
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+}
@@ -0,0 +1,117 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import org.springframework.boot.jackson.JsonComponent;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Serializers of the list responses, writing the same JSON as Jackson's bean serializers without reflection.
+ * Field names are encoded once and values go straight into the generator's recycled buffer, which is flushed
+ * to the response stream, so a page costs no allocation per book.
+ */
+@JsonComponent
+public class BookJson {
+
+    private static final SerializableString ID = new SerializedString("id");
+    private static final SerializableString NAME = new SerializedString("name");
+    private static final SerializableString ISBN = new SerializedString("isbn");
+    private static final SerializableString VERSION = new SerializedString("version");
+    private static final SerializableString CURRENT_PAGE = new SerializedString("currentPage");
+    private static final SerializableString TOTAL_PAGES = new SerializedString("totalPages");
+    private static final SerializableString TOTAL_ITEMS = new SerializedString("totalItems");
+    private static final SerializableString TOTAL_EXACT = new SerializedString("totalExact");
+    private static final SerializableString BOOKS = new SerializedString("books");
+
+    public static class BookDtoSerializer extends StdSerializer<BookDto> {
+
+        public BookDtoSerializer() {
+            super(BookDto.class);
+        }
+
+        @Override
+        public void serialize(BookDto book, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            writeBook(book, generator, includesNulls(provider));
+        }
+    }
+
+    public static class BookPageDtoSerializer extends StdSerializer<BookPageDto> {
+
+        public BookPageDtoSerializer() {
+            super(BookPageDto.class);
+        }
+
+        @Override
+        public void serialize(BookPageDto page, JsonGenerator generator, SerializerProvider provider)
+                throws IOException {
+            final boolean includeNulls = includesNulls(provider);
+            generator.writeStartObject(page);
+            generator.writeFieldName(CURRENT_PAGE);
+            generator.writeNumber(page.getCurrentPage());
+            generator.writeFieldName(TOTAL_PAGES);
+            generator.writeNumber(page.getTotalPages());
+            generator.writeFieldName(TOTAL_ITEMS);
+            generator.writeNumber(page.getTotalItems());
+            generator.writeFieldName(TOTAL_EXACT);
+            generator.writeBoolean(page.isTotalExact());
+            final List<BookDto> books = page.getBooks();
+            if (books != null) {
+                generator.writeFieldName(BOOKS);
+                generator.writeStartArray(books, books.size());
+                for (int i = 0; i < books.size(); i++) {
+                    final BookDto book = books.get(i);
+                    if (book == null) {
+                        generator.writeNull();
+                    } else {
+                        writeBook(book, generator, includeNulls);
+                    }
+                }
+                generator.writeEndArray();
+            } else if (includeNulls) {
+                generator.writeFieldName(BOOKS);
+                generator.writeNull();
+            }
+            generator.writeEndObject();
+        }
+    }
+
+    private static void writeBook(BookDto book, JsonGenerator generator, boolean includeNulls) throws IOException {
+        generator.writeStartObject(book);
+        writeString(generator, ID, book.getId(), includeNulls);
+        writeString(generator, NAME, book.getName(), includeNulls);
+        writeString(generator, ISBN, book.getIsbn(), includeNulls);
+        if (book.getVersion() != null) {
+            generator.writeFieldName(VERSION);
+            generator.writeNumber(book.getVersion());
+        } else if (includeNulls) {
+            generator.writeFieldName(VERSION);
+            generator.writeNull();
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeString(JsonGenerator generator,
+                                    SerializableString field,
+                                    String value,
+                                    boolean includeNulls) throws IOException {
+        if (value != null) {
+            generator.writeFieldName(field);
+            generator.writeString(value);
+        } else if (includeNulls) {
+            generator.writeFieldName(field);
+            generator.writeNull();
+        }
+    }
+
+    // as the bean serializers, nulls are left out when spring.jackson.default-property-inclusion asks for it
+    private static boolean includesNulls(SerializerProvider provider) {
+        final JsonInclude.Include inclusion = provider.getConfig().getDefaultPropertyInclusion().getValueInclusion();
+        return inclusion == JsonInclude.Include.ALWAYS || inclusion == JsonInclude.Include.USE_DEFAULTS;
+    }
+}
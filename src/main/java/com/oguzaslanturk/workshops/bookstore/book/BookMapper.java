@@ -0,0 +1,32 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copies between {@link Book} and {@link BookDto} field by field, without reflection.
+ * New fields have to be added here as well.
+ */
+public final class BookMapper {
+
+    private BookMapper() {
+    }
+
+    public static BookDto toDto(Book book) {
+        return new BookDto(book.getId(), book.getName(), book.getIsbn(), book.getVersion());
+    }
+
+    public static List<BookDto> toDtos(List<Book> books) {
+        final List<BookDto> dtos = new ArrayList<>(books.size());
+        for (Book book : books) {
+            dtos.add(toDto(book));
+        }
+        return dtos;
+    }
+
+    public static Book toEntity(BookDto bookDto) {
+        final Book book = new Book(bookDto.getId(), bookDto.getName(), bookDto.getIsbn());
+        book.setVersion(bookDto.getVersion());
+        return book;
+    }
+}
@@ -0,0 +1,35 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Folds book names to the form stored in {@code normalizedName}: accents stripped,
+ * lower case and single spaces, so prefix searches can run as index range scans.
+ */
+public final class BookNameNormalizer {
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SPACES = Pattern.compile("\\s+");
+    private static final char MAX_CHAR = '\uffff';
+
+    private BookNameNormalizer() {
+    }
+
+    public static String normalize(String name) {
+        if (name == null) {
+            return null;
+        }
+        final String decomposed = Normalizer.normalize(name, Normalizer.Form.NFD);
+        final String folded = MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+        return SPACES.matcher(folded).replaceAll(" ").trim();
+    }
+
+    /**
+     * Exclusive upper bound of the normalized names starting with the given normalized prefix.
+     */
+    public static String prefixUpperBound(String normalizedPrefix) {
+        return normalizedPrefix + MAX_CHAR;
+    }
+}
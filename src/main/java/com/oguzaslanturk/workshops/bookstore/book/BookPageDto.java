@@ -12,5 +12,10 @@ public class BookPageDto implements Serializable {
     private int currentPage;
     private int totalPages;
     private long totalItems;
+    private boolean totalExact;
     private List<BookDto> books;
+
+    public BookPageDto(int currentPage, int totalPages, long totalItems, List<BookDto> books) {
+        this(currentPage, totalPages, totalItems, true, books);
+    }
 }
@@ -0,0 +1,145 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+import com.oguzaslanturk.workshops.bookstore.exception.InvalidQueryException;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.CriteriaDefinition;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.TextCriteria;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Criteria for the book filters, shared by the blocking and the reactive services.
+ */
+public final class BookQueries {
+
+    public static final String ID_FIELD = "_id";
+    public static final String NAME_FIELD = "name";
+    public static final String NORMALIZED_NAME_FIELD = "normalizedName";
+    public static final String ISBN_FIELD = "isbn";
+    public static final String VERSION_FIELD = "version";
+
+    // BookDto properties and the document fields they are read from
+    private static final Map<String, String> DTO_FIELDS = Map.of("id", ID_FIELD, NAME_FIELD, NAME_FIELD, ISBN_FIELD, ISBN_FIELD, VERSION_FIELD, VERSION_FIELD);
+
+    private BookQueries() {
+    }
+
+    public static Query addSearchCriteria(Query query, BookDto searchData, NameMatchMode matchMode) {
+        if (StringUtils.isNotBlank(searchData.getName())) {
+            query.addCriteria(getNameCriteria(searchData.getName(), matchMode));
+        }
+        if (StringUtils.isNotBlank(searchData.getIsbn())) {
+            query.addCriteria(Criteria.where(ISBN_FIELD).is(searchData.getIsbn()));
+        }
+        return query;
+    }
+
+    /**
+     * Limits the returned document fields to the requested BookDto properties, all of them when none are requested,
+     * so documents decode straight into the DTO. The version is always returned, page ETags are derived from it.
+     */
+    public static Query addProjection(Query query, List<String> fields) {
+        if (fields == null || fields.isEmpty()) {
+            DTO_FIELDS.values().forEach(field -> query.fields().include(field));
+            return query;
+        }
+        for (String field : fields) {
+            if (!DTO_FIELDS.containsKey(field)) {
+                throw new InvalidQueryException("Unknown field " + field + ", fields are "
+                        + String.join(", ", DTO_FIELDS.keySet()));
+            }
+            query.fields().include(DTO_FIELDS.get(field));
+        }
+        if (!fields.contains("id")) {
+            query.fields().exclude(ID_FIELD);
+        }
+        query.fields().include(VERSION_FIELD);
+        return query;
+    }
+
+    /**
+     * Matches the book with the given id, and only in the given version unless that is {@code null}.
+     */
+    public static Query getVersionedIdQuery(String id, Long version) {
+        final Criteria criteria = Criteria.where(ID_FIELD).is(id);
+        if (version != null) {
+            criteria.and(VERSION_FIELD).is(version);
+        }
+        return new Query(criteria);
+    }
+
+    /**
+     * Replaces the fields of a book and moves it to its next version.
+     */
+    public static Update getReplaceUpdate(BookDto bookData) {
+        final Update update = new Update()
+                .set(NAME_FIELD, bookData.getName())
+                .set(NORMALIZED_NAME_FIELD, BookNameNormalizer.normalize(bookData.getName()))
+                .inc(VERSION_FIELD, 1);
+        // a null isbn would collide with other books in the sparse unique index, a missing one does not
+        return StringUtils.isNotEmpty(bookData.getIsbn())
+                ? update.set(ISBN_FIELD, bookData.getIsbn())
+                : update.unset(ISBN_FIELD);
+    }
+
+    /**
+     * Sets only the fields present in the changes and moves the book to its next version.
+     */
+    public static Update getPatchUpdate(BookDto changes) {
+        final Update update = new Update();
+        if (changes.getName() != null) {
+            if (StringUtils.isBlank(changes.getName())) {
+                throw new InvalidQueryException("name: must not be blank");
+            }
+            update.set(NAME_FIELD, changes.getName())
+                    .set(NORMALIZED_NAME_FIELD, BookNameNormalizer.normalize(changes.getName()));
+        }
+        if (changes.getIsbn() != null) {
+            update.set(ISBN_FIELD, changes.getIsbn());
+        }
+        if (update.getUpdateObject().isEmpty()) {
+            throw new InvalidQueryException("The patch does not change any field");
+        }
+        return update.inc(VERSION_FIELD, 1);
+    }
+
+    /**
+     * Which of the search fields a request filters on: {@code none}, {@code name}, {@code isbn} or {@code both}.
+     */
+    public static String getShape(BookDto searchData) {
+        final boolean byName = StringUtils.isNotBlank(searchData.getName());
+        final boolean byIsbn = StringUtils.isNotBlank(searchData.getIsbn());
+        if (byName && byIsbn) {
+            return "both";
+        }
+        return byName ? NAME_FIELD : byIsbn ? ISBN_FIELD : "none";
+    }
+
+    public static CriteriaDefinition getNameCriteria(String name, NameMatchMode matchMode) {
+        switch (matchMode) {
+            case PREFIX:
+                final String prefix = BookNameNormalizer.normalize(name);
+                return Criteria.where(NORMALIZED_NAME_FIELD)
+                        .gte(prefix)
+                        .lt(BookNameNormalizer.prefixUpperBound(prefix));
+            case TOKEN:
+            case PHRASE:
+                return getTextCriteria(name, matchMode);
+            default:
+                // user input is matched literally, never compiled as a pattern
+                return Criteria.where(NAME_FIELD).regex(Pattern.quote(name), "i");
+        }
+    }
+
+    public static TextCriteria getTextCriteria(String text, NameMatchMode matchMode) {
+        final TextCriteria criteria = TextCriteria.forDefaultLanguage();
+        return matchMode == NameMatchMode.PHRASE
+                ? criteria.matchingPhrase(text)
+                : criteria.matchingAny(StringUtils.split(text));
+    }
+}
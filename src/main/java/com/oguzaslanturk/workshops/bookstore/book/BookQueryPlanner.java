@@ -0,0 +1,105 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+import com.oguzaslanturk.workshops.bookstore.exception.InvalidQueryException;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Rewrites or rejects the client's {@link Pageable} or {@link Sort} before it reaches the database. Page sizes
+ * are capped, sorting is limited to properties backed by an index, a sort on {@code name} or {@code isbn} gets an
+ * {@code id} tiebreaker in the same direction so the {@code name_id} or {@code isbn_id} index serves it, and offsets
+ * deeper than the configured limit are rejected in favour of cursor pagination. Unsorted requests are ordered by
+ * {@code id}. Every rewrite and rejection of what the client asked for is counted as {@value #PLAN_COUNTER}.
+ */
+@Component
+public class BookQueryPlanner {
+
+    public static final String PLAN_COUNTER = "bookstore.books.query.plan";
+
+    private static final String ID_PROPERTY = "id";
+    private static final String NAME_PROPERTY = "name";
+    private static final String ISBN_PROPERTY = "isbn";
+    private static final Set<String> SORTABLE_PROPERTIES = Set.of(ID_PROPERTY, NAME_PROPERTY, ISBN_PROPERTY);
+    private static final String REWRITTEN = "rewritten";
+    private static final String REJECTED = "rejected";
+
+    private final int maxPageSize;
+
+    private final long maxOffset;
+
+    private final MeterRegistry meterRegistry;
+
+    public BookQueryPlanner(@Value("${bookstore.query.max-page-size:100}") int maxPageSize,
+                            @Value("${bookstore.query.max-offset:10000}") long maxOffset,
+                            MeterRegistry meterRegistry) {
+        this.maxPageSize = maxPageSize;
+        this.maxOffset = maxOffset;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public Pageable plan(Pageable pageable) {
+        if (pageable.isUnpaged()) {
+            count(REWRITTEN, "unpaged");
+            return PageRequest.of(0, maxPageSize, Sort.by(ID_PROPERTY));
+        }
+        final Pageable planned = PageRequest.of(pageable.getPageNumber(),
+                capPageSize(pageable.getPageSize()),
+                planSort(pageable.getSort()));
+        if (planned.getOffset() > maxOffset) {
+            count(REJECTED, "offset");
+            throw new InvalidQueryException("Pages beyond offset " + maxOffset
+                    + " are not served, use cursor pagination to read further");
+        }
+        return planned;
+    }
+
+    public int capPageSize(int size) {
+        if (size > maxPageSize) {
+            count(REWRITTEN, "page_size");
+            return maxPageSize;
+        }
+        return size;
+    }
+
+    public Sort planSort(Sort sort) {
+        if (sort.isUnsorted()) {
+            return Sort.by(ID_PROPERTY);
+        }
+        final List<Sort.Order> orders = sort.toList();
+        for (Sort.Order order : orders) {
+            if (!SORTABLE_PROPERTIES.contains(order.getProperty()) || order.isIgnoreCase()) {
+                count(REJECTED, "sort");
+                throw new InvalidQueryException("Sorting is only supported by " + String.join(", ", SORTABLE_PROPERTIES));
+            }
+        }
+
+        final Sort.Order first = orders.get(0);
+        if (orders.size() == 1) {
+            if (ID_PROPERTY.equals(first.getProperty())) {
+                return sort;
+            }
+            count(REWRITTEN, "tiebreaker");
+            return sort.and(Sort.by(first.getDirection(), ID_PROPERTY));
+        }
+        // only the compound name_id and isbn_id orders are backed by an index
+        if (orders.size() == 2
+                && !ID_PROPERTY.equals(first.getProperty())
+                && ID_PROPERTY.equals(orders.get(1).getProperty())
+                && first.getDirection() == orders.get(1).getDirection()) {
+            return sort;
+        }
+        count(REJECTED, "sort");
+        throw new InvalidQueryException("Sorting is only supported by a single property");
+    }
+
+    private void count(String action, String reason) {
+        meterRegistry.counter(PLAN_COUNTER, "action", action, "reason", reason).increment();
+    }
+}
@@ -0,0 +1,17 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BookSearchHitDto implements Serializable {
+    private String id;
+    private String name;
+    private String isbn;
+    private Float score;
+}
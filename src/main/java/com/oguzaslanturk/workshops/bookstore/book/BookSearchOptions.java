@@ -0,0 +1,26 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class BookSearchOptions {
+    @Builder.Default
+    private CountMode count = CountMode.EXACT;
+    /**
+     * Index backed by default, an unanchored {@link NameMatchMode#CONTAINS} scan has to be asked for.
+     */
+    @Builder.Default
+    private NameMatchMode match = NameMatchMode.PREFIX;
+    /**
+     * BookDto fields to return, all of them when empty.
+     */
+    private List<String> fields;
+}
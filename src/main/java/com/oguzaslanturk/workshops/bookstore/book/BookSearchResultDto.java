@@ -0,0 +1,16 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class BookSearchResultDto implements Serializable {
+    private String query;
+    private NameMatchMode mode;
+    private int currentPage;
+    private List<BookSearchHitDto> hits;
+}
@@ -1,11 +1,22 @@
 package com.oguzaslanturk.workshops.bookstore.book;
 
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
 
 public interface BookService {
     BookDto getById(String id);
-    BookPageDto getAll(BookDto searchData, Pageable pageable);
+    BookBatchDto getByIds(List<String> ids);
+    BookPageDto getAll(BookDto searchData, BookSearchOptions options, Pageable pageable);
+    BookCursorPageDto getAllByCursor(BookDto searchData, BookSearchOptions options, String cursor, Pageable pageable);
+    BookSearchResultDto search(String text, NameMatchMode mode, Pageable pageable);
+    void exportAll(BookDto searchData, BookSearchOptions options, Sort sort, BookDataFormat format, OutputStream out)
+            throws IOException;
     BookDto save(BookDto bookData);
-    BookDto update(BookDto bookData);
-    void deleteById(String id);
+    BookDto update(BookDto bookData, Long expectedVersion);
+    BookDto patch(String id, BookDto changes, Long expectedVersion);
+    boolean deleteById(String id);
 }
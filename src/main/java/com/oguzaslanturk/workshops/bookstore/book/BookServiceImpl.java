@@ -1,86 +1,489 @@
 package com.oguzaslanturk.workshops.bookstore.book;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.oguzaslanturk.workshops.bookstore.config.ReadRoutingConfig;
+import com.oguzaslanturk.workshops.bookstore.config.VirtualThreadConfig;
+import com.oguzaslanturk.workshops.bookstore.exception.InvalidQueryException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.apache.commons.lang3.StringUtils;
-import org.modelmapper.ModelMapper;
+import org.bson.BsonType;
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.CachePut;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
-import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.data.mongodb.core.query.TextQuery;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.CloseableIterator;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.regex.Pattern;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import static com.oguzaslanturk.workshops.bookstore.book.BookQueries.ID_FIELD;
+import static com.oguzaslanturk.workshops.bookstore.book.BookQueries.NORMALIZED_NAME_FIELD;
+
 
 @Service
 public class BookServiceImpl implements BookService {
 
+    public static final String BOOKS_CACHE = "books";
+    public static final String QUERY_TIMER = "bookstore.books.query";
+
+    private static final String ID_PROPERTY = "id";
+    private static final int EXPORT_BATCH_SIZE = 1000;
+    private static final byte[] LINE_SEPARATOR = "\n".getBytes(StandardCharsets.UTF_8);
+    private static final Map<String, Function<Book, String>> CURSOR_SORT_KEYS = Map.of("name", Book::getName);
+
     private final BookRepository bookRepository;
 
     private final MongoTemplate mongoTemplate;
 
-    private final ModelMapper modelMapper = new ModelMapper();
+    // lists, searches and exports may read from secondaries, reads by id and writes stay on the primary
+    private final MongoTemplate listMongoTemplate;
+
+    private final BookCountCache countCache;
+
+    private final ObjectMapper objectMapper;
+
+    private final ExecutorService countExecutor;
+
+    private final MeterRegistry meterRegistry;
+
+    private final BookQueryPlanner queryPlanner;
+
+    private final CacheManager cacheManager;
+
+    private final BookIsbnIndex isbnIndex;
 
     @Autowired
-    public BookServiceImpl(BookRepository bookRepository, MongoTemplate mongoTemplate) {
+    public BookServiceImpl(BookRepository bookRepository,
+                           MongoTemplate mongoTemplate,
+                           @Qualifier(ReadRoutingConfig.LIST_MONGO_TEMPLATE) MongoTemplate listMongoTemplate,
+                           BookCountCache countCache,
+                           ObjectMapper objectMapper,
+                           @Qualifier(VirtualThreadConfig.VIRTUAL_THREAD_EXECUTOR) Optional<ExecutorService> countExecutor,
+                           MeterRegistry meterRegistry,
+                           BookQueryPlanner queryPlanner,
+                           CacheManager cacheManager,
+                           BookIsbnIndex isbnIndex) {
         this.bookRepository = bookRepository;
         this.mongoTemplate = mongoTemplate;
+        this.listMongoTemplate = listMongoTemplate;
+        this.countCache = countCache;
+        this.objectMapper = objectMapper;
+        this.countExecutor = countExecutor.orElse(null);
+        this.meterRegistry = meterRegistry;
+        this.queryPlanner = queryPlanner;
+        this.cacheManager = cacheManager;
+        this.isbnIndex = isbnIndex;
     }
 
     @Override
+    @Cacheable(cacheNames = BOOKS_CACHE, unless = "#result == null")
     public BookDto getById(String id) {
         final Optional<Book> book = bookRepository.findById(id);
-        return book.map(value -> modelMapper.map(value, BookDto.class)).orElse(null);
+        return book.map(BookMapper::toDto).orElse(null);
     }
 
+    /**
+     * Serves the ids from the books cache where possible and fetches the rest in one {@code $in} query,
+     * caching what it finds. Books keep the order of the request, duplicates are returned once.
+     */
     @Override
-    public BookPageDto getAll(BookDto searchData, Pageable pageable) {
-        Query query = new Query().with(pageable);
-
-        if (StringUtils.isNotBlank(searchData.getName())) {
-            query.addCriteria(Criteria.where("name").regex(Pattern.compile(searchData.getName(), Pattern.CASE_INSENSITIVE)));
+    public BookBatchDto getByIds(List<String> ids) {
+        final Set<String> requested = new LinkedHashSet<>(ids);
+        final Cache cache = cacheManager.getCache(BOOKS_CACHE);
+        final Map<String, BookDto> found = new HashMap<>(requested.size() * 2);
+        final List<String> uncached = new ArrayList<>();
+        for (String id : requested) {
+            final BookDto cached = cache != null ? cache.get(id, BookDto.class) : null;
+            if (cached != null) {
+                found.put(id, cached);
+            } else {
+                uncached.add(id);
+            }
         }
-        if (StringUtils.isNotBlank(searchData.getIsbn())) {
-            query.addCriteria(Criteria.where("isbn").is(searchData.getIsbn()));
+        if (!uncached.isEmpty()) {
+            for (Book book : bookRepository.findAllById(uncached)) {
+                final BookDto bookDto = BookMapper.toDto(book);
+                found.put(bookDto.getId(), bookDto);
+                if (cache != null) {
+                    cache.put(bookDto.getId(), bookDto);
+                }
+            }
         }
 
-        final Page<Book> pageOfBooks = PageableExecutionUtils.getPage(
-                mongoTemplate.find(query, Book.class),
-                pageable,
-                () -> mongoTemplate.count(Query.of(query).limit(-1).skip(-1), Book.class));
+        final List<BookDto> books = new ArrayList<>(found.size());
+        final List<String> missing = new ArrayList<>();
+        for (String id : requested) {
+            final BookDto book = found.get(id);
+            if (book != null) {
+                books.add(book);
+            } else {
+                missing.add(id);
+            }
+        }
+        return new BookBatchDto(books, missing);
+    }
+
+    @Override
+    public BookPageDto getAll(BookDto searchData, BookSearchOptions options, Pageable requested) {
+        final Pageable pageable = queryPlanner.plan(requested);
 
+        // find and count together, or the ISBN index lookup standing in for them, tagged by the fields filtered on
+        final Timer.Sample sample = Timer.start(meterRegistry);
+        final List<BookDto> books;
+        final BookTotal total;
+        try {
+            final BookPageDto indexed = getByIndexedIsbn(searchData, options, pageable);
+            if (indexed != null) {
+                return indexed;
+            }
+            Query query = new Query().with(pageable);
+            BookQueries.addSearchCriteria(query, searchData, options.getMatch());
+            BookQueries.addProjection(query, options.getFields());
+            final CompletableFuture<Long> exactCount = startExactCount(query, searchData, pageable, options.getCount());
+            books = listMongoTemplate.query(Book.class).as(BookDto.class).matching(query).all();
+            total = countBooks(query, books, pageable, options.getCount(), exactCount);
+        } finally {
+            sample.stop(meterRegistry.timer(QUERY_TIMER, "shape", BookQueries.getShape(searchData)));
+        }
+        final Page<BookDto> pageOfBooks = new PageImpl<>(books, pageable, total.items);
 
         return new BookPageDto(pageable.getPageNumber(),
                 pageOfBooks.getTotalPages(),
                 pageOfBooks.getTotalElements(),
-                pageOfBooks.getContent()
+                total.exact,
+                pageOfBooks.getContent());
+    }
+
+    @Override
+    public BookCursorPageDto getAllByCursor(BookDto searchData,
+                                            BookSearchOptions options,
+                                            String cursor,
+                                            Pageable pageable) {
+        final Sort.Order order = getCursorOrder(pageable.getSort());
+        final boolean sortById = ID_PROPERTY.equals(order.getProperty());
+        final int size = queryPlanner.capPageSize(pageable.getPageSize());
+
+        // one extra document tells whether another page follows without counting
+        Query query = new Query().limit(size + 1);
+        BookQueries.addSearchCriteria(query, searchData, options.getMatch());
+        if (StringUtils.isNotEmpty(cursor)) {
+            final BookCursor position = BookCursor.decode(cursor);
+            if (!position.matches(order)) {
+                throw new InvalidQueryException("Cursor was created for a different sort order");
+            }
+            query.addCriteria(getSeekCriteria(order, sortById, position));
+        }
+        query.with(sortById
+                ? Sort.by(order.getDirection(), ID_FIELD)
+                : Sort.by(order.getDirection(), order.getProperty(), ID_FIELD));
+
+        final List<Book> books = listMongoTemplate.find(query, Book.class);
+        final boolean hasNext = books.size() > size;
+        final List<Book> page = hasNext ? books.subList(0, size) : books;
+
+        String nextCursor = null;
+        if (hasNext) {
+            final Book last = page.get(page.size() - 1);
+            final String value = sortById ? null : CURSOR_SORT_KEYS.get(order.getProperty()).apply(last);
+            nextCursor = new BookCursor(order.getProperty(), order.getDirection(), last.getId(), value).encode();
+        }
+
+        return new BookCursorPageDto(page.size(),
+                nextCursor,
+                BookMapper.toDtos(page));
+    }
+
+    @Override
+    public BookSearchResultDto search(String text, NameMatchMode mode, Pageable pageable) {
+        if (StringUtils.isBlank(text)) {
+            throw new InvalidQueryException("Search text must not be blank");
+        }
+        if (mode == NameMatchMode.CONTAINS) {
+            throw new InvalidQueryException("Search supports only the indexed match modes PREFIX, TOKEN and PHRASE");
+        }
+
+        final Query query = mode == NameMatchMode.PREFIX
+                ? new Query(BookQueries.getNameCriteria(text, mode)).with(Sort.by(NORMALIZED_NAME_FIELD, ID_FIELD))
+                : TextQuery.queryText(BookQueries.getTextCriteria(text, mode)).sortByScore();
+        // ranking decides the order, so only the page of the client's pageable is applied
+        query.with(PageRequest.of(pageable.getPageNumber(), queryPlanner.capPageSize(pageable.getPageSize())));
+
+        return new BookSearchResultDto(text,
+                mode,
+                pageable.getPageNumber(),
+                listMongoTemplate.find(query, Book.class)
                         .stream()
-                        .map(book -> modelMapper.map(book, BookDto.class))
+                        .map(book -> new BookSearchHitDto(book.getId(), book.getName(), book.getIsbn(), book.getScore()))
                         .collect(Collectors.toList()));
     }
 
     @Override
+    public void exportAll(BookDto searchData,
+                          BookSearchOptions options,
+                          Sort sort,
+                          BookDataFormat format,
+                          OutputStream out) throws IOException {
+        Query query = new Query().with(sort).cursorBatchSize(EXPORT_BATCH_SIZE);
+        BookQueries.addSearchCriteria(query, searchData, options.getMatch());
+
+        if (format == BookDataFormat.CSV) {
+            writeLine(out, BookCsv.formatLine(Arrays.asList(BookCsv.ID, BookCsv.NAME, BookCsv.ISBN)));
+        }
+        // the cursor is only advanced as fast as the client reads, one batch in memory at a time
+        try (CloseableIterator<Book> books = listMongoTemplate.stream(query, Book.class)) {
+            while (books.hasNext()) {
+                final Book book = books.next();
+                if (format == BookDataFormat.CSV) {
+                    writeLine(out, BookCsv.formatLine(Arrays.asList(book.getId(), book.getName(), book.getIsbn())));
+                } else {
+                    out.write(objectMapper.writeValueAsBytes(BookMapper.toDto(book)));
+                    out.write(LINE_SEPARATOR);
+                }
+            }
+        }
+        out.flush();
+    }
+
+    @Override
+    @CachePut(cacheNames = BOOKS_CACHE, key = "#result.id")
     public BookDto save(BookDto bookData) {
-        Book book = modelMapper.map(bookData, Book.class);
-        bookRepository.save(book);
+        Book book = bookRepository.save(BookMapper.toEntity(bookData));
         bookData.setId(book.getId());
+        bookData.setVersion(book.getVersion());
+        isbnIndex.put(book.getIsbn(), book.getId());
         return bookData;
     }
 
     @Override
-    public BookDto update(BookDto bookData) {
-        Book book = modelMapper.map(bookData, Book.class);
-        bookRepository.save(book);
-        return modelMapper.map(book, BookDto.class);
+    @CachePut(cacheNames = BOOKS_CACHE, key = "#bookData.id", unless = "#result == null")
+    public BookDto update(BookDto bookData, Long expectedVersion) {
+        return modify(bookData.getId(), BookQueries.getReplaceUpdate(bookData), expectedVersion);
     }
 
     @Override
-    public void deleteById(String id) {
-        bookRepository.deleteById(id);
+    @CachePut(cacheNames = BOOKS_CACHE, key = "#id", unless = "#result == null")
+    public BookDto patch(String id, BookDto changes, Long expectedVersion) {
+        return modify(id, BookQueries.getPatchUpdate(changes), expectedVersion);
+    }
+
+    @Override
+    @CacheEvict(cacheNames = BOOKS_CACHE)
+    public boolean deleteById(String id) {
+        // the removed document tells the isbn to drop from the ISBN index
+        final Query query = BookQueries.getVersionedIdQuery(id, null);
+        query.fields().include(BookQueries.ISBN_FIELD);
+        final Book book = mongoTemplate.findAndRemove(query, Book.class);
+        if (book == null) {
+            return false;
+        }
+        isbnIndex.remove(book.getIsbn(), id);
+        return true;
+    }
+
+    /**
+     * Updates a book in a single round trip, never recreating one that was deleted meanwhile.
+     * Returns {@code null} when there is no book with the id.
+     */
+    private BookDto modify(String id, Update update, Long expectedVersion) {
+        final Book book = mongoTemplate.findAndModify(BookQueries.getVersionedIdQuery(id, expectedVersion),
+                update,
+                FindAndModifyOptions.options().returnNew(true).upsert(false),
+                Book.class);
+        if (book == null && expectedVersion != null && bookRepository.existsById(id)) {
+            throw new OptimisticLockingFailureException("Book " + id + " is no longer at version " + expectedVersion);
+        }
+        if (book == null) {
+            return null;
+        }
+        isbnIndex.put(book.getIsbn(), book.getId());
+        return BookMapper.toDto(book);
+    }
+
+    /**
+     * Answers the first page of an exact ISBN filter from the ISBN index and the books cache.
+     * Returns {@code null} to run the query instead when the filter has other parts, the index has no entry
+     * or its entry turns out to be stale.
+     */
+    private BookPageDto getByIndexedIsbn(BookDto searchData, BookSearchOptions options, Pageable pageable) {
+        if (StringUtils.isNotBlank(searchData.getName())
+                || (options.getFields() != null && !options.getFields().isEmpty())
+                || (pageable.isPaged() && pageable.getPageNumber() > 0)) {
+            return null;
+        }
+        final String isbn = searchData.getIsbn();
+        final String id = isbnIndex.findId(isbn);
+        if (id == null) {
+            return null;
+        }
+        final List<BookDto> books = getByIds(List.of(id)).getBooks();
+        if (books.isEmpty() || !isbn.equals(books.get(0).getIsbn())) {
+            isbnIndex.remove(isbn, id);
+            return null;
+        }
+        return new BookPageDto(0, 1, 1, true, books);
+    }
+
+    private void writeLine(OutputStream out, String line) throws IOException {
+        out.write(line.getBytes(StandardCharsets.UTF_8));
+        out.write(LINE_SEPARATOR);
+    }
+
+    /**
+     * With virtual threads enabled an exact count runs alongside the find instead of after it, when the page
+     * can come back full. An ISBN filter matches one book at most, so its page tells the total on its own and a
+     * count sent to the server could not be called back.
+     */
+    private CompletableFuture<Long> startExactCount(Query query,
+                                                    BookDto searchData,
+                                                    Pageable pageable,
+                                                    CountMode countMode) {
+        if (countExecutor == null
+                || countMode != CountMode.EXACT
+                || pageable.isUnpaged()
+                || (StringUtils.isNotBlank(searchData.getIsbn()) && pageable.getPageSize() > 1)) {
+            return null;
+        }
+        final Query countQuery = Query.of(query).limit(-1).skip(-1);
+        return CompletableFuture.supplyAsync(() -> listMongoTemplate.count(countQuery, Book.class), countExecutor);
+    }
+
+    private BookTotal countBooks(Query query,
+                                 List<?> books,
+                                 Pageable pageable,
+                                 CountMode countMode,
+                                 CompletableFuture<Long> exactCount) {
+        final long offset = pageable.isPaged() ? pageable.getOffset() : 0;
+        // a page that is not full tells the total on its own, as in PageableExecutionUtils
+        if (pageable.isUnpaged() || (books.size() < pageable.getPageSize() && (offset == 0 || !books.isEmpty()))) {
+            if (exactCount != null) {
+                // only stops a count still waiting for a thread, one already sent runs to its end
+                exactCount.cancel(false);
+            }
+            return new BookTotal(offset + books.size(), true);
+        }
+        if (exactCount != null) {
+            return new BookTotal(awaitCount(exactCount), true);
+        }
+
+        final Query countQuery = Query.of(query).limit(-1).skip(-1);
+        switch (countMode) {
+            case NONE:
+                return new BookTotal(offset + books.size(), false);
+            case ESTIMATED:
+                if (countQuery.getQueryObject().isEmpty()) {
+                    return new BookTotal(Math.max(listMongoTemplate.estimatedCount(Book.class), offset + books.size()), false);
+                }
+                return new BookTotal(listMongoTemplate.count(countQuery, Book.class), true);
+            case CACHED:
+                final String filter = countQuery.getQueryObject().toJson();
+                final Long cachedCount = countCache.get(filter);
+                if (cachedCount != null) {
+                    return new BookTotal(Math.max(cachedCount, offset + books.size()), false);
+                }
+                // cached counts are read from the primary, so a lagging secondary's count is not kept for the ttl
+                final long count = mongoTemplate.count(countQuery, Book.class);
+                countCache.put(filter, count);
+                return new BookTotal(count, true);
+            default:
+                return new BookTotal(listMongoTemplate.count(countQuery, Book.class), true);
+        }
+    }
+
+    private long awaitCount(CompletableFuture<Long> exactCount) {
+        try {
+            return exactCount.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private Sort.Order getCursorOrder(Sort sort) {
+        final List<Sort.Order> orders = sort.toList();
+        if (orders.isEmpty()) {
+            return Sort.Order.asc(ID_PROPERTY);
+        }
+        final Sort.Order order = orders.get(0);
+        if (orders.size() > 1
+                || !(ID_PROPERTY.equals(order.getProperty()) || CURSOR_SORT_KEYS.containsKey(order.getProperty()))) {
+            throw new InvalidQueryException("Cursor pagination supports sorting by a single property of "
+                    + ID_PROPERTY + ", " + String.join(", ", CURSOR_SORT_KEYS.keySet()));
+        }
+        return order;
+    }
+
+    private Criteria getSeekCriteria(Sort.Order order, boolean sortById, BookCursor position) {
+        final Criteria afterId = getAfterIdCriteria(order, position.getId());
+        if (sortById) {
+            return afterId;
+        }
+        final String property = order.getProperty();
+        final Criteria afterValue = order.isAscending()
+                ? Criteria.where(property).gt(position.getValue())
+                : Criteria.where(property).lt(position.getValue());
+        return new Criteria().orOperator(afterValue,
+                new Criteria().andOperator(Criteria.where(property).is(position.getValue()), afterId));
+    }
+
+    /**
+     * Ids are strings or ObjectIds and {@code $gt}/{@code $lt} only match ids of the same BSON type as the last one.
+     * Strings sort before ObjectIds, so ids of the other type follow a string id in ascending order and an ObjectId
+     * in descending order.
+     */
+    private static Criteria getAfterIdCriteria(Sort.Order order, String id) {
+        final boolean objectId = ObjectId.isValid(id);
+        final Object lastId = objectId ? new ObjectId(id) : id;
+        final Criteria sameType = order.isAscending()
+                ? Criteria.where(ID_FIELD).gt(lastId)
+                : Criteria.where(ID_FIELD).lt(lastId);
+        if (objectId == order.isAscending()) {
+            return sameType;
+        }
+        final BsonType otherType = objectId ? BsonType.STRING : BsonType.OBJECT_ID;
+        return new Criteria().orOperator(sameType, Criteria.where(ID_FIELD).type(otherType.getValue()));
+    }
+
+    private static final class BookTotal {
+        private final long items;
+        private final boolean exact;
+
+        private BookTotal(long items, boolean exact) {
+            this.items = items;
+            this.exact = exact;
+        }
     }
 }
@@ -0,0 +1,15 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+/**
+ * How {@link BookService#getAll} finds the total number of matching books when a page is full.
+ */
+public enum CountMode {
+    /** Count matching documents on every request. */
+    EXACT,
+    /** Skip counting; the total is a lower bound derived from the current page. */
+    NONE,
+    /** Use the collection metadata count when there is no filter, otherwise count exactly. */
+    ESTIMATED,
+    /** Reuse a recent count of the same filter, recounting once it expires. */
+    CACHED
+}
@@ -0,0 +1,283 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+import org.bson.types.ObjectId;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Open addressing map from an ISBN packed into a {@code long} to the id of its book, kept in primitive arrays.
+ * An entry with an ObjectId costs 20 bytes per slot (8 for the key, 12 for the id) instead of the two strings
+ * and the node of a {@code HashMap<String, String>}. Ids that are not ObjectIds go to a small overflow map.
+ * <p>
+ * Lookups are lock free optimistic reads that are retried under a read lock if a write got in between,
+ * writes are exclusive. Collisions are resolved by linear probing, removals shift entries back instead of
+ * leaving tombstones.
+ */
+public final class IsbnIdTable {
+
+    /**
+     * Returned by {@link #pack(String)} for values that are not a plain ISBN-10 or ISBN-13.
+     */
+    public static final long NOT_PACKABLE = -1;
+
+    private static final long EMPTY = 0;
+    private static final long ISBN_10_OFFSET = 10_000_000_000_000L;
+    private static final double MAX_LOAD = 0.8;
+    private static final int MIN_CAPACITY = 16;
+    private static final int ID_BYTES = 12;
+
+    private final StampedLock lock = new StampedLock();
+
+    private final Map<Long, String> overflow = new ConcurrentHashMap<>();
+
+    private volatile Table table;
+
+    public IsbnIdTable(int expectedSize) {
+        this.table = new Table(capacityFor(expectedSize));
+    }
+
+    /**
+     * Packs the 13 digits of an ISBN-13, or the 9 digits and check character of an ISBN-10 into a range
+     * above all ISBN-13 values, so both forms of the same book stay distinct as they are in the database.
+     */
+    public static long pack(String isbn) {
+        if (isbn == null) {
+            return NOT_PACKABLE;
+        }
+        final int length = isbn.length();
+        if (length != 13 && length != 10) {
+            return NOT_PACKABLE;
+        }
+        long packed = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = isbn.charAt(i);
+            if (c >= '0' && c <= '9') {
+                packed = packed * (length == 10 && i == 9 ? 11 : 10) + (c - '0');
+            } else if (c == 'X' && length == 10 && i == 9) {
+                packed = packed * 11 + 10;
+            } else {
+                return NOT_PACKABLE;
+            }
+        }
+        if (length == 10) {
+            packed += ISBN_10_OFFSET;
+        }
+        return packed == EMPTY ? NOT_PACKABLE : packed;
+    }
+
+    public String get(long key) {
+        final long stamp = lock.tryOptimisticRead();
+        String id = null;
+        boolean consistent;
+        try {
+            id = find(key);
+            consistent = lock.validate(stamp);
+        } catch (RuntimeException e) {
+            // a concurrent write moved entries under the read
+            consistent = false;
+        }
+        if (consistent) {
+            return id;
+        }
+        final long readStamp = lock.readLock();
+        try {
+            return find(key);
+        } finally {
+            lock.unlockRead(readStamp);
+        }
+    }
+
+    public void put(long key, String id) {
+        final long stamp = lock.writeLock();
+        try {
+            if (ObjectId.isValid(id)) {
+                overflow.remove(key);
+                insert(key, new ObjectId(id));
+            } else {
+                delete(key);
+                overflow.put(key, id);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes the entry of the key if it still maps to the id.
+     */
+    public void remove(long key, String id) {
+        final long stamp = lock.writeLock();
+        try {
+            if (id.equals(find(key))) {
+                delete(key);
+                overflow.remove(key);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Grows the table to hold the expected entries within the maximum load, so loading them does not resize it
+     * on the way and leave it at as little as half that load.
+     */
+    public void ensureCapacity(int expectedSize) {
+        final long stamp = lock.writeLock();
+        try {
+            final int capacity = capacityFor(expectedSize);
+            if (capacity > table.keys.length) {
+                resize(capacity);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void clear() {
+        final long stamp = lock.writeLock();
+        try {
+            table = new Table(MIN_CAPACITY);
+            overflow.clear();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public int size() {
+        return table.size + overflow.size();
+    }
+
+    /**
+     * Bytes held by the primitive arrays, the overflow map is not counted.
+     */
+    public long footprintBytes() {
+        return (long) table.keys.length * (Long.BYTES + Long.BYTES + Integer.BYTES);
+    }
+
+    private String find(long key) {
+        final Table current = table;
+        final long[] keys = current.keys;
+        final int capacity = keys.length;
+        int slot = current.home(key);
+        for (int probes = 0; probes < capacity; probes++) {
+            final long candidate = keys[slot];
+            if (candidate == key) {
+                return toId(current.idHigh[slot], current.idLow[slot]);
+            }
+            if (candidate == EMPTY) {
+                break;
+            }
+            slot = slot + 1 == capacity ? 0 : slot + 1;
+        }
+        return overflow.get(key);
+    }
+
+    private void insert(long key, ObjectId id) {
+        if (table.size + 1 > table.keys.length * MAX_LOAD) {
+            resize(table.keys.length * 2);
+        }
+        final ByteBuffer bytes = ByteBuffer.wrap(id.toByteArray());
+        table.put(key, bytes.getLong(), bytes.getInt());
+    }
+
+    private void delete(long key) {
+        final Table current = table;
+        final int capacity = current.keys.length;
+        int slot = current.home(key);
+        while (current.keys[slot] != key) {
+            if (current.keys[slot] == EMPTY) {
+                return;
+            }
+            slot = slot + 1 == capacity ? 0 : slot + 1;
+        }
+        // shift the following entries of the probe sequence back into the gap
+        int gap = slot;
+        int next = gap;
+        while (true) {
+            next = next + 1 == capacity ? 0 : next + 1;
+            final long moving = current.keys[next];
+            if (moving == EMPTY) {
+                break;
+            }
+            final int home = current.home(moving);
+            final boolean movable = gap <= next
+                    ? home <= gap || home > next
+                    : home <= gap && home > next;
+            if (movable) {
+                current.keys[gap] = moving;
+                current.idHigh[gap] = current.idHigh[next];
+                current.idLow[gap] = current.idLow[next];
+                gap = next;
+            }
+        }
+        current.keys[gap] = EMPTY;
+        current.size--;
+    }
+
+    private void resize(int capacity) {
+        final Table resized = new Table(capacity);
+        final Table current = table;
+        for (int slot = 0; slot < current.keys.length; slot++) {
+            if (current.keys[slot] != EMPTY) {
+                resized.put(current.keys[slot], current.idHigh[slot], current.idLow[slot]);
+            }
+        }
+        table = resized;
+    }
+
+    private static String toId(long high, int low) {
+        return new ObjectId(ByteBuffer.allocate(ID_BYTES).putLong(high).putInt(low).flip()).toHexString();
+    }
+
+    /**
+     * Maps the mixed key onto the table without requiring a power of two capacity, so the table can be
+     * sized to the expected entries instead of the next power of two.
+     */
+    static int home(long key, int capacity) {
+        long hash = key;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return (int) (((hash & 0xffffffffL) * capacity) >>> 32);
+    }
+
+    private static int capacityFor(int expectedSize) {
+        return Math.max(MIN_CAPACITY, (int) Math.min(Integer.MAX_VALUE - 8, (long) Math.ceil(expectedSize / MAX_LOAD)));
+    }
+
+    private static final class Table {
+        private final long[] keys;
+        private final long[] idHigh;
+        private final int[] idLow;
+        private int size;
+
+        private Table(int capacity) {
+            keys = new long[capacity];
+            idHigh = new long[capacity];
+            idLow = new int[capacity];
+        }
+
+        private int home(long key) {
+            return IsbnIdTable.home(key, keys.length);
+        }
+
+        private void put(long key, long high, int low) {
+            final int capacity = keys.length;
+            int slot = home(key);
+            while (keys[slot] != EMPTY && keys[slot] != key) {
+                slot = slot + 1 == capacity ? 0 : slot + 1;
+            }
+            if (keys[slot] == EMPTY) {
+                size++;
+            }
+            keys[slot] = key;
+            idHigh[slot] = high;
+            idLow[slot] = low;
+        }
+    }
+}
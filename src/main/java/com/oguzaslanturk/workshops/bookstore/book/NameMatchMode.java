@@ -0,0 +1,15 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+/**
+ * How a name filter matches book names.
+ */
+public enum NameMatchMode {
+    /** Case-insensitive substring of the name; cannot use an index. */
+    CONTAINS,
+    /** Normalized name starts with the text; served by the normalizedName index. */
+    PREFIX,
+    /** Name contains any of the words; served by the text index. */
+    TOKEN,
+    /** Name contains the exact phrase; served by the text index. */
+    PHRASE
+}
@@ -0,0 +1,147 @@
+package com.oguzaslanturk.workshops.bookstore.config;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandSucceededEvent;
+
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limit on the requests in flight that follows the latency of Mongo commands, additive increase and
+ * multiplicative decrease per window as in TCP congestion control. Latency is kept apart per read command, the
+ * reads the limit protects, so imports and the catalogue generator writing in bulk do not move it. While the
+ * average latency of every read command in a window stays within {@code tolerance} times its baseline, the
+ * lowest average seen for that command with a slow upward drift, the limit grows by one; when one of them
+ * exceeds that the limit shrinks by a tenth.
+ * Expensive requests may only use {@link #EXPENSIVE_SHARE} of the limit, the rest is kept for cheap ones.
+ */
+public class AdaptiveConcurrencyLimit implements CommandListener {
+
+    public static final double EXPENSIVE_SHARE = 0.75;
+
+    private static final long WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final double DECREASE = 0.9;
+    private static final double BASELINE_DRIFT = 0.01;
+    // getMore is left out, change streams and exports wait in it for the next documents
+    private static final String[] MEASURED_COMMANDS = {"find", "count", "aggregate", "distinct"};
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final double tolerance;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final Map<String, CommandLatency> latencies = Stream.of(MEASURED_COMMANDS)
+            .collect(Collectors.toUnmodifiableMap(Function.identity(), name -> new CommandLatency()));
+
+    private volatile int limit;
+
+    private volatile long windowStart = System.nanoTime();
+
+    public AdaptiveConcurrencyLimit(int minLimit, int maxLimit, double tolerance) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.limit = maxLimit;
+    }
+
+    /**
+     * Admits a request if it fits the current limit, cheap requests may use all of it.
+     */
+    public boolean tryAcquire(boolean expensive) {
+        adjustIfDue(System.nanoTime());
+        final int admitted = expensive ? (int) (limit * EXPENSIVE_SHARE) : limit;
+        while (true) {
+            final int current = inFlight.get();
+            if (current >= admitted) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        record(event.getCommandName(), event.getElapsedTime(TimeUnit.NANOSECONDS));
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        record(event.getCommandName(), event.getElapsedTime(TimeUnit.NANOSECONDS));
+    }
+
+    void record(String commandName, long elapsedNanos) {
+        final CommandLatency latency = latencies.get(commandName);
+        if (latency != null) {
+            latency.nanos.add(elapsedNanos);
+            latency.commands.increment();
+        }
+    }
+
+    void adjustIfDue(long now) {
+        if (now - windowStart < WINDOW_NANOS) {
+            return;
+        }
+        synchronized (this) {
+            if (now - windowStart < WINDOW_NANOS) {
+                return;
+            }
+            windowStart = now;
+            boolean measured = false;
+            boolean congested = false;
+            for (CommandLatency latency : latencies.values()) {
+                final long count = latency.commands.sumThenReset();
+                final long total = latency.nanos.sumThenReset();
+                if (count > 0) {
+                    measured = true;
+                    congested |= latency.isAboveBaseline((double) total / count, tolerance);
+                }
+            }
+            if (measured) {
+                limit = congested
+                        ? Math.max(minLimit, (int) (limit * DECREASE))
+                        : Math.min(maxLimit, limit + 1);
+            }
+        }
+    }
+
+    private static class CommandLatency {
+
+        private final LongAdder nanos = new LongAdder();
+
+        private final LongAdder commands = new LongAdder();
+
+        private double baselineNanos;
+
+        boolean isAboveBaseline(double latency, double tolerance) {
+            if (baselineNanos == 0 || latency < baselineNanos) {
+                baselineNanos = latency;
+            } else {
+                baselineNanos += (latency - baselineNanos) * BASELINE_DRIFT;
+            }
+            return latency > baselineNanos * tolerance;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.oguzaslanturk.workshops.bookstore.config;
+
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.oguzaslanturk.workshops.bookstore.book.BookAdmissionInterceptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Puts the {@link BookAdmissionInterceptor} in front of the book endpoints, with per client token buckets of
+ * {@code bookstore.admission.bucket-capacity} tokens refilled at {@code bookstore.admission.refill-per-second},
+ * and a concurrency limit between {@code min-concurrency} and {@code max-concurrency} driven by Mongo latency.
+ * Buckets are kept per remote address unless {@code bookstore.admission.trust-client-headers} is set. Buckets
+ * refill by the {@link Ticker} bean if there is one, the system ticker otherwise.
+ */
+@Configuration
+@ConditionalOnProperty(name = "bookstore.admission.enabled", matchIfMissing = true)
+public class AdmissionControlConfig implements WebMvcConfigurer {
+
+    private final double bucketCapacity;
+
+    private final double refillPerSecond;
+
+    private final int minConcurrency;
+
+    private final int maxConcurrency;
+
+    private final double latencyTolerance;
+
+    private final boolean trustClientHeaders;
+
+    private final Ticker ticker;
+
+    public AdmissionControlConfig(@Value("${bookstore.admission.bucket-capacity:200}") double bucketCapacity,
+                                  @Value("${bookstore.admission.refill-per-second:100}") double refillPerSecond,
+                                  @Value("${bookstore.admission.min-concurrency:10}") int minConcurrency,
+                                  @Value("${bookstore.admission.max-concurrency:200}") int maxConcurrency,
+                                  @Value("${bookstore.admission.latency-tolerance:2.0}") double latencyTolerance,
+                                  @Value("${bookstore.admission.trust-client-headers:false}") boolean trustClientHeaders,
+                                  ObjectProvider<Ticker> ticker) {
+        this.bucketCapacity = bucketCapacity;
+        this.refillPerSecond = refillPerSecond;
+        this.minConcurrency = minConcurrency;
+        this.maxConcurrency = maxConcurrency;
+        this.latencyTolerance = latencyTolerance;
+        this.trustClientHeaders = trustClientHeaders;
+        this.ticker = ticker.getIfAvailable(Ticker::systemTicker);
+    }
+
+    @Bean
+    public AdaptiveConcurrencyLimit admissionConcurrencyLimit() {
+        return new AdaptiveConcurrencyLimit(minConcurrency, maxConcurrency, latencyTolerance);
+    }
+
+    @Bean
+    public MongoClientSettingsBuilderCustomizer admissionLatencyListenerCustomizer() {
+        return settings -> settings.addCommandListener(admissionConcurrencyLimit());
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new BookAdmissionInterceptor(admissionConcurrencyLimit(),
+                        bucketCapacity,
+                        refillPerSecond,
+                        trustClientHeaders,
+                        ticker))
+                .addPathPatterns("/books/**");
+    }
+}
@@ -0,0 +1,200 @@
+package com.oguzaslanturk.workshops.bookstore.config;
+
+import com.oguzaslanturk.workshops.bookstore.book.Book;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexField;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Brings the indexes of the books collection in line with the ones declared on {@link Book}
+ * once the application is ready. Missing indexes are built in the background and indexes
+ * that are not declared or never used are reported. An index that fails to build, such as a unique one over
+ * duplicate values, is logged and the others are still built. Existing indexes whose keys or unique and sparse
+ * options differ from their declaration, under its name or with its keys under another name, are reported and
+ * left as they are, since replacing them means dropping them first.
+ */
+@Component
+public class BookIndexReconciler {
+
+    private static final Logger log = LoggerFactory.getLogger(BookIndexReconciler.class);
+
+    private static final String ID_INDEX = "_id_";
+    private static final String NAME = "name";
+    private static final String UNIQUE = "unique";
+    private static final String SPARSE = "sparse";
+    private static final String TEXT = "text";
+    private static final String TEXT_INDEX_KEY_PREFIX = "_fts";
+
+    private final MongoTemplate mongoTemplate;
+
+    private final boolean enabled;
+
+    public BookIndexReconciler(MongoTemplate mongoTemplate,
+                               @Value("${bookstore.indexes.reconcile:true}") boolean enabled) {
+        this.mongoTemplate = mongoTemplate;
+        this.enabled = enabled;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconcileInBackground() {
+        if (!enabled) {
+            return;
+        }
+        CompletableFuture.runAsync(this::reconcile)
+                .exceptionally(e -> {
+                    log.error("Reconciling indexes of the books collection failed", e);
+                    return null;
+                });
+    }
+
+    public void reconcile() {
+        final IndexOperations indexOperations = mongoTemplate.indexOps(Book.class);
+        final List<IndexInfo> existing = indexOperations.getIndexInfo();
+
+        final Set<String> declared = new LinkedHashSet<>();
+        final Set<String> built = new HashSet<>();
+        final IndexResolver resolver = IndexResolver.create(mongoTemplate.getConverter().getMappingContext());
+        for (IndexDefinition index : resolver.resolveIndexFor(Book.class)) {
+            final String name = getName(index);
+            declared.add(name);
+            final IndexInfo present = findIndex(existing, name, index);
+            if (present != null) {
+                reportMismatch(name, index, present);
+            } else {
+                log.warn("Index {} of the books collection is missing, building it", name);
+                try {
+                    indexOperations.ensureIndex(index);
+                    built.add(name);
+                    log.info("Built index {} of the books collection", name);
+                } catch (DataAccessException e) {
+                    log.error("Building index {} of the books collection failed, queries relying on it will scan",
+                            name, e);
+                }
+            }
+        }
+
+        reportUndeclaredAndUnused(declared, built);
+    }
+
+    /**
+     * Indexes built in this run have had no chance to be used yet, so only those found already in place are
+     * reported as unused.
+     */
+    private void reportUndeclaredAndUnused(Set<String> declared, Set<String> built) {
+        final String collection = mongoTemplate.getCollectionName(Book.class);
+        mongoTemplate.getCollection(collection)
+                .aggregate(Collections.singletonList(new Document("$indexStats", new Document())))
+                .forEach(stats -> {
+                    final String name = stats.getString(NAME);
+                    if (ID_INDEX.equals(name)) {
+                        return;
+                    }
+                    if (!declared.contains(name)) {
+                        log.warn("Index {} of the books collection is not declared on the Book document", name);
+                    }
+                    final Document accesses = stats.get("accesses", Document.class);
+                    if (!built.contains(name)
+                            && accesses != null
+                            && ((Number) accesses.get("ops")).longValue() == 0) {
+                        log.warn("Index {} of the books collection has not been used since {}",
+                                name, accesses.getDate("since"));
+                    }
+                });
+    }
+
+    /**
+     * The existing index of the name, or else one with the same keys, which the server would refuse to build
+     * a second time under another name.
+     */
+    private static IndexInfo findIndex(List<IndexInfo> existing, String name, IndexDefinition index) {
+        final List<String> keys = getKeys(index);
+        IndexInfo sameKeys = null;
+        for (IndexInfo info : existing) {
+            if (info.getName().equals(name)) {
+                return info;
+            }
+            if (sameKeys == null && getKeys(info).equals(keys)) {
+                sameKeys = info;
+            }
+        }
+        return sameKeys;
+    }
+
+    private static void reportMismatch(String name, IndexDefinition index, IndexInfo present) {
+        final List<String> keys = getKeys(index);
+        final boolean unique = index.getIndexOptions().getBoolean(UNIQUE, false);
+        final boolean sparse = index.getIndexOptions().getBoolean(SPARSE, false);
+        final List<String> presentKeys = getKeys(present);
+        if (!present.getName().equals(name)) {
+            log.warn("Index {} of the books collection has the keys of index {} declared on the Book document",
+                    present.getName(), name);
+        }
+        if (!presentKeys.equals(keys) || present.isUnique() != unique || present.isSparse() != sparse) {
+            log.warn("Index {} of the books collection is {} unique {} sparse {} but declared as {} unique {} "
+                            + "sparse {}, drop it to have it rebuilt",
+                    present.getName(), presentKeys, present.isUnique(), present.isSparse(), keys, unique, sparse);
+        }
+    }
+
+    /**
+     * Keys in the server's naming, with the fields of a text index sorted since their order carries no meaning.
+     */
+    private static List<String> getKeys(IndexDefinition index) {
+        final List<String> keys = index.getIndexKeys()
+                .entrySet()
+                .stream()
+                .map(key -> key.getKey() + "_" + key.getValue())
+                .collect(Collectors.toList());
+        return index.getIndexKeys().containsValue(TEXT) ? sorted(keys) : keys;
+    }
+
+    private static List<String> getKeys(IndexInfo info) {
+        final List<String> keys = info.getIndexFields()
+                .stream()
+                // text indexes also list the server's own _ftsx key next to their weighted fields
+                .filter(field -> !field.getKey().startsWith(TEXT_INDEX_KEY_PREFIX))
+                .map(field -> field.getKey() + "_" + (field.isText() ? TEXT
+                        : field.isHashed() ? "hashed"
+                        : field.getDirection() == Sort.Direction.DESC ? "-1" : "1"))
+                .collect(Collectors.toList());
+        return info.getIndexFields().stream().anyMatch(IndexField::isText) ? sorted(keys) : keys;
+    }
+
+    private static List<String> sorted(List<String> keys) {
+        keys.sort(null);
+        return keys;
+    }
+
+    private String getName(IndexDefinition index) {
+        final String name = index.getIndexOptions().getString(NAME);
+        if (name != null) {
+            return name;
+        }
+        // same naming as the server uses for indexes created without a name
+        return index.getIndexKeys()
+                .entrySet()
+                .stream()
+                .map(key -> key.getKey() + "_" + key.getValue())
+                .collect(Collectors.joining("_"));
+    }
+}
@@ -0,0 +1,13 @@
+package com.oguzaslanturk.workshops.bookstore.config;
+
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Enables the Caffeine backed caches configured under {@code spring.cache}.
+ * Hit, miss, put and eviction counts are published by the actuator as {@code cache.*} metrics.
+ */
+@Configuration
+@EnableCaching
+public class CacheConfig {
+}
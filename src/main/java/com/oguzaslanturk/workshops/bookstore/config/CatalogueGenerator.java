@@ -0,0 +1,252 @@
+package com.oguzaslanturk.workshops.bookstore.config;
+
+import com.mongodb.bulk.BulkWriteError;
+import com.oguzaslanturk.workshops.bookstore.book.Book;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fills the books collection with {@code bookstore.seed.generated-books} synthetic books for load tests.
+ * <p>
+ * Names are built from a few title patterns with word frequencies following a Zipf distribution, so some words are
+ * shared by many books as in a real catalogue, and include accented words and series numbers. Most books get a valid
+ * ISBN-13, mostly with the 978 prefix, a few get none. Every book is derived from its number alone, ids included,
+ * so generating again only inserts the books that are missing and an interrupted run can be resumed.
+ */
+@Component
+public class CatalogueGenerator {
+
+    private static final Logger log = LoggerFactory.getLogger(CatalogueGenerator.class);
+
+    // generated ids are this prefix and the number of the book in hex, so they are valid ObjectIds
+    private static final String ID_PREFIX = "5eed";
+    private static final int DUPLICATE_KEY = 11000;
+    private static final String ID_INDEX = " index: _id_ ";
+    private static final long MAX_BOOKS = 1_000_000_000L;
+    // coprime with MAX_BOOKS, so the 9 digit ISBN bodies of different books never repeat
+    private static final long ISBN_STRIDE = 387_420_489L;
+    private static final long ISBN_OFFSET = 123_456_789L;
+    private static final int ISBN_979_PERCENT = 12;
+    private static final int NO_ISBN_PERCENT = 3;
+    private static final int SERIES_PERCENT = 8;
+    private static final double ZIPF_EXPONENT = 1.07;
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private static final String[] ADJECTIVES = {"Last", "Lost", "Silent", "Little", "Dark", "Golden", "Hidden",
+            "Secret", "Broken", "Forgotten", "Burning", "Quiet", "Wild", "Crimson", "Invisible", "Northern", "Endless",
+            "Bitter", "Glass", "Iron", "Hollow", "Wandering", "Distant", "Sleeping", "Fragile", "Naïve", "Electric"};
+    private static final String[] NOUNS = {"Night", "House", "Garden", "River", "Prince", "Shadow", "Sea", "Road",
+            "Door", "Kingdom", "Letter", "Winter", "Mountain", "City", "Storm", "Empire", "Mirror", "Island", "Clock",
+            "Forest", "Daughter", "Stranger", "Fire", "Bridge", "Song", "Map", "Lighthouse", "Orchard", "Café",
+            "Labyrinth", "Pilgrim", "Harbour", "Cartographer", "Fiancée", "Saga", "Éclair", "Algorithm", "Mosaic"};
+    private static final String[] PLACES = {"London", "Paris", "İstanbul", "New York", "Rome", "Tokyo", "Berlin",
+            "Zürich", "São Paulo", "Kraków", "Reykjavík", "Montréal", "Málaga", "Cairo", "Lisbon", "Kyoto", "Ankara"};
+    private static final String[] PEOPLE = {"Anna", "Oliver", "Elif", "Marco", "Zoë", "Hugo", "Mei", "José",
+            "Amélie", "Sven", "Leila", "Björn", "Noor", "Emre", "Dmitri", "Chloé", "Kenji", "Aoife"};
+
+    private static final double[] ADJECTIVE_WEIGHTS = zipfCumulative(ADJECTIVES.length);
+    private static final double[] NOUN_WEIGHTS = zipfCumulative(NOUNS.length);
+    private static final double[] PLACE_WEIGHTS = zipfCumulative(PLACES.length);
+    private static final double[] PEOPLE_WEIGHTS = zipfCumulative(PEOPLE.length);
+
+    private final MongoTemplate mongoTemplate;
+
+    private final long books;
+
+    private final int batchSize;
+
+    private final int threads;
+
+    private final long randomSeed;
+
+    public CatalogueGenerator(MongoTemplate mongoTemplate,
+                              @Value("${bookstore.seed.generated-books:0}") long books,
+                              @Value("${bookstore.seed.batch-size:5000}") int batchSize,
+                              @Value("${bookstore.seed.threads:4}") int threads,
+                              @Value("${bookstore.seed.random-seed:42}") long randomSeed) {
+        if (books < 0 || books > MAX_BOOKS) {
+            throw new IllegalArgumentException("bookstore.seed.generated-books must be between 0 and " + MAX_BOOKS);
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("bookstore.seed.batch-size must be at least 1");
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("bookstore.seed.threads must be at least 1");
+        }
+        this.mongoTemplate = mongoTemplate;
+        this.books = books;
+        this.batchSize = batchSize;
+        this.threads = threads;
+        this.randomSeed = randomSeed;
+    }
+
+    public boolean isEnabled() {
+        return books > 0;
+    }
+
+    /**
+     * Inserts the configured number of books in parallel unordered batches, skipping the ones already stored,
+     * and logs the progress every few seconds and the throughput at the end.
+     */
+    public void generate() throws InterruptedException {
+        final Query generated = new Query(Criteria.where("_id").gte(new ObjectId(getId(0))).lte(new ObjectId(getId(books - 1))));
+        final long existing = mongoTemplate.count(generated, Book.class);
+        if (existing >= books) {
+            log.info("All {} generated books are already stored", books);
+            return;
+        }
+        log.info("Generating {} books, {} of them are already stored, in batches of {} on {} threads",
+                books, existing, batchSize, threads);
+
+        final Progress progress = new Progress();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<?>> batches = new ArrayList<>();
+            for (long first = 0; first < books; first += batchSize) {
+                final long from = first;
+                final long to = Math.min(first + batchSize, books);
+                batches.add(executor.submit(() -> insertBatch(from, to, progress)));
+            }
+            for (Future<?> batch : batches) {
+                batch.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Generating books failed after " + progress.inserted.get() + " inserts",
+                    e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        final double seconds = (System.nanoTime() - progress.started) / 1e9;
+        log.info("Generated {} books in {} s, {} books/s, {} were already stored",
+                progress.inserted.get(), String.format("%.1f", seconds),
+                Math.round(progress.inserted.get() / Math.max(seconds, 0.001)), progress.skipped.get());
+    }
+
+    /**
+     * Builds the book with the given number, the same one for the same number and random seed.
+     */
+    public Book generateBook(long number) {
+        final SplittableRandom random = new SplittableRandom(randomSeed * 0x9E3779B97F4A7C15L + number);
+        final Book book = new Book(getId(number), generateName(random), generateIsbn(number, random));
+        book.setVersion(0L);
+        return book;
+    }
+
+    private void insertBatch(long from, long to, Progress progress) {
+        final List<Book> batch = new ArrayList<>((int) (to - from));
+        for (long number = from; number < to; number++) {
+            batch.add(generateBook(number));
+        }
+        int inserted;
+        try {
+            inserted = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Book.class)
+                    .insert(batch)
+                    .execute()
+                    .getInsertedCount();
+        } catch (BulkOperationException e) {
+            // books stored by an earlier run are duplicates of their id, anything else fails the generation,
+            // an ISBN taken by another book included
+            for (BulkWriteError error : e.getErrors()) {
+                if (!isDuplicateId(error)) {
+                    throw e;
+                }
+            }
+            inserted = e.getResult().getInsertedCount();
+        }
+        progress.add(inserted, batch.size() - inserted);
+    }
+
+    private static boolean isDuplicateId(BulkWriteError error) {
+        return error.getCode() == DUPLICATE_KEY && error.getMessage() != null && error.getMessage().contains(ID_INDEX);
+    }
+
+    private String generateName(SplittableRandom random) {
+        final String name;
+        final int pattern = random.nextInt(100);
+        if (pattern < 30) {
+            name = "The " + pick(ADJECTIVES, ADJECTIVE_WEIGHTS, random) + " " + pick(NOUNS, NOUN_WEIGHTS, random);
+        } else if (pattern < 50) {
+            name = pick(NOUNS, NOUN_WEIGHTS, random) + " of the " + pick(NOUNS, NOUN_WEIGHTS, random);
+        } else if (pattern < 65) {
+            name = "The " + pick(NOUNS, NOUN_WEIGHTS, random) + " of " + pick(PLACES, PLACE_WEIGHTS, random);
+        } else if (pattern < 78) {
+            name = pick(PEOPLE, PEOPLE_WEIGHTS, random) + "'s " + pick(NOUNS, NOUN_WEIGHTS, random);
+        } else if (pattern < 90) {
+            name = pick(ADJECTIVES, ADJECTIVE_WEIGHTS, random) + " " + pick(NOUNS, NOUN_WEIGHTS, random) + "s";
+        } else {
+            name = "A " + pick(NOUNS, NOUN_WEIGHTS, random) + " in " + pick(PLACES, PLACE_WEIGHTS, random);
+        }
+        return random.nextInt(100) < SERIES_PERCENT ? name + ", Book " + (2 + random.nextInt(6)) : name;
+    }
+
+    private String generateIsbn(long number, SplittableRandom random) {
+        if (random.nextInt(100) < NO_ISBN_PERCENT) {
+            return null;
+        }
+        final String prefix = random.nextInt(100) < ISBN_979_PERCENT ? "979" : "978";
+        final String digits = prefix + String.format("%09d", (ISBN_OFFSET + number * ISBN_STRIDE) % MAX_BOOKS);
+        int sum = 0;
+        for (int i = 0; i < digits.length(); i++) {
+            sum += (digits.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+        }
+        return digits + (10 - sum % 10) % 10;
+    }
+
+    private static String getId(long number) {
+        return String.format("%s%020x", ID_PREFIX, number);
+    }
+
+    private static String pick(String[] words, double[] cumulativeWeights, SplittableRandom random) {
+        final double point = random.nextDouble() * cumulativeWeights[cumulativeWeights.length - 1];
+        final int index = Arrays.binarySearch(cumulativeWeights, point);
+        return words[index >= 0 ? index : -index - 1];
+    }
+
+    private static double[] zipfCumulative(int size) {
+        final double[] cumulative = new double[size];
+        double total = 0;
+        for (int rank = 0; rank < size; rank++) {
+            total += 1 / Math.pow(rank + 1, ZIPF_EXPONENT);
+            cumulative[rank] = total;
+        }
+        return cumulative;
+    }
+
+    private final class Progress {
+        private final long started = System.nanoTime();
+        private final AtomicLong inserted = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private final AtomicLong reportedAt = new AtomicLong(started);
+
+        private void add(int insertedBooks, int skippedBooks) {
+            final long done = inserted.addAndGet(insertedBooks) + skipped.addAndGet(skippedBooks);
+            final long now = System.nanoTime();
+            final long last = reportedAt.get();
+            if (now - last >= PROGRESS_INTERVAL_NANOS && reportedAt.compareAndSet(last, now)) {
+                final double seconds = (now - started) / 1e9;
+                log.info("Generated {} of {} books ({}%), {} books/s",
+                        done, books, done * 100 / books, Math.round(inserted.get() / seconds));
+            }
+        }
+    }
+}
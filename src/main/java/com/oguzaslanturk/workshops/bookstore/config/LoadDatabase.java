@@ -6,20 +6,48 @@ import com.oguzaslanturk.workshops.bookstore.book.BookRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+/**
+ * Seeds the sample books and the generated catalogue, if any, on startup.
+ * Seeding only inserts what is missing and is skipped entirely with {@code bookstore.seed.enabled=false}.
+ */
 @Configuration
+@ConditionalOnProperty(name = "bookstore.seed.enabled", matchIfMissing = true)
 public class LoadDatabase {
 
     private static final Logger log = LoggerFactory.getLogger(LoadDatabase.class);
 
     @Bean
-    public CommandLineRunner initDatabase(BookRepository repository) {
+    public CommandLineRunner initDatabase(BookRepository repository, CatalogueGenerator catalogueGenerator) {
         return args -> {
             log.info("Initializing database...");
-            log.info("Inserting " + repository.save(new Book("1", "The Little Prince", "9786059681001")));
-            log.info("Inserting " + repository.save(new Book("2", "Animal Farm", "9786257678322")));
+            final List<Book> samples = Arrays.asList(new Book("1", "The Little Prince", "9786059681001"),
+                    new Book("2", "Animal Farm", "9786257678322"));
+            // versioned books are inserted, not overwritten, so existing ones are skipped
+            final Set<String> existing = StreamSupport.stream(repository.findAllById(
+                            samples.stream().map(Book::getId).collect(Collectors.toList())).spliterator(), false)
+                    .map(Book::getId)
+                    .collect(Collectors.toCollection(HashSet::new));
+            final List<Book> missing = samples.stream()
+                    .filter(book -> !existing.contains(book.getId()))
+                    .collect(Collectors.toList());
+            if (!missing.isEmpty()) {
+                log.info("Inserting " + repository.insert(missing));
+            }
+
+            if (catalogueGenerator.isEnabled()) {
+                catalogueGenerator.generate();
+            }
         };
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,57 @@
+package com.oguzaslanturk.workshops.bookstore.config;
+
+import com.oguzaslanturk.workshops.bookstore.book.Book;
+import com.oguzaslanturk.workshops.bookstore.book.BookNameNormalizer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.CloseableIterator;
+
+/**
+ * Fills {@code normalizedName} for books stored before prefix search existed,
+ * so they are found by the indexed name searches.
+ */
+@Configuration
+public class NormalizedNameMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(NormalizedNameMigration.class);
+
+    private static final int BATCH_SIZE = 1000;
+
+    @Bean
+    public CommandLineRunner backfillNormalizedNames(MongoTemplate mongoTemplate) {
+        return args -> {
+            final Query missing = new Query(Criteria.where("normalizedName").exists(false));
+            missing.fields().include("name");
+
+            long updated = 0;
+            int pending = 0;
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Book.class);
+            try (CloseableIterator<Book> books = mongoTemplate.stream(missing, Book.class)) {
+                while (books.hasNext()) {
+                    final Book book = books.next();
+                    bulk.updateOne(Query.query(Criteria.where("_id").is(book.getId())),
+                            Update.update("normalizedName", BookNameNormalizer.normalize(book.getName())));
+                    if (++pending == BATCH_SIZE) {
+                        updated += bulk.execute().getModifiedCount();
+                        bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Book.class);
+                        pending = 0;
+                    }
+                }
+            }
+            if (pending > 0) {
+                updated += bulk.execute().getModifiedCount();
+            }
+            if (updated > 0) {
+                log.info("Normalized names of {} books", updated);
+            }
+        };
+    }
+}
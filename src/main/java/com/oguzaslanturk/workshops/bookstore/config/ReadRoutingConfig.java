@@ -0,0 +1,51 @@
+package com.oguzaslanturk.workshops.bookstore.config;
+
+import com.mongodb.ReadPreference;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Two templates over the same client: the primary {@code mongoTemplate}, used by the repositories, for writes and
+ * reads by id that must see the latest writes, and {@value #LIST_MONGO_TEMPLATE} for list, search and export
+ * queries, reading with {@code bookstore.read-routing.list-read-preference} within
+ * {@code bookstore.read-routing.max-staleness} of the primary. On a standalone server or a replica set without
+ * secondaries both read from the same node.
+ */
+@Configuration
+public class ReadRoutingConfig {
+
+    public static final String LIST_MONGO_TEMPLATE = "listMongoTemplate";
+
+    @Bean
+    @Primary
+    public MongoTemplate mongoTemplate(MongoDatabaseFactory mongoDatabaseFactory, MongoConverter mongoConverter) {
+        return new MongoTemplate(mongoDatabaseFactory, mongoConverter);
+    }
+
+    @Bean(LIST_MONGO_TEMPLATE)
+    public MongoTemplate listMongoTemplate(MongoDatabaseFactory mongoDatabaseFactory,
+                                           MongoConverter mongoConverter,
+                                           @Value("${bookstore.read-routing.list-read-preference:secondaryPreferred}") String readPreference,
+                                           @Value("${bookstore.read-routing.max-staleness:90s}") Duration maxStaleness) {
+        final MongoTemplate listMongoTemplate = new MongoTemplate(mongoDatabaseFactory, mongoConverter);
+        listMongoTemplate.setReadPreference(getReadPreference(readPreference, maxStaleness));
+        return listMongoTemplate;
+    }
+
+    // the server accepts no max staleness below 90 seconds, and none at all for the primary
+    static ReadPreference getReadPreference(String name, Duration maxStaleness) {
+        if (ReadPreference.primary().getName().equalsIgnoreCase(name) || maxStaleness.isZero()) {
+            return ReadPreference.valueOf(name);
+        }
+        return ReadPreference.valueOf(name, Collections.emptyList(), maxStaleness.getSeconds(), TimeUnit.SECONDS);
+    }
+}
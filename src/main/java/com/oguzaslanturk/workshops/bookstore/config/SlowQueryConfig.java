@@ -0,0 +1,17 @@
+package com.oguzaslanturk.workshops.bookstore.config;
+
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Registers the {@link SlowQueryRecorder} with the Mongo client next to the actuator's metrics listeners.
+ */
+@Configuration
+public class SlowQueryConfig {
+
+    @Bean
+    public MongoClientSettingsBuilderCustomizer slowQueryListenerCustomizer(SlowQueryRecorder slowQueryRecorder) {
+        return settings -> settings.addCommandListener(slowQueryRecorder);
+    }
+}
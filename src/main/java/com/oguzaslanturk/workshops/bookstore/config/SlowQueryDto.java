@@ -0,0 +1,23 @@
+package com.oguzaslanturk.workshops.bookstore.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SlowQueryDto implements Serializable {
+    private Instant timestamp;
+    private String command;
+    private String collection;
+    private String shape;
+    private long durationMillis;
+    private Long docsReturned;
+    private Long docsExamined;
+    private String plan;
+    private Boolean inMemorySort;
+}
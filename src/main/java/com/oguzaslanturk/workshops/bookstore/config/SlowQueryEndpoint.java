@@ -0,0 +1,32 @@
+package com.oguzaslanturk.workshops.bookstore.config;
+
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * {@code /actuator/slowqueries} lists the queries recorded by {@link SlowQueryRecorder}, a DELETE clears them.
+ */
+@Component
+@Endpoint(id = "slowqueries")
+public class SlowQueryEndpoint {
+
+    private final SlowQueryRecorder slowQueryRecorder;
+
+    public SlowQueryEndpoint(SlowQueryRecorder slowQueryRecorder) {
+        this.slowQueryRecorder = slowQueryRecorder;
+    }
+
+    @ReadOperation
+    public List<SlowQueryDto> slowQueries() {
+        return slowQueryRecorder.getSlowQueries();
+    }
+
+    @DeleteOperation
+    public void clear() {
+        slowQueryRecorder.clear();
+    }
+}
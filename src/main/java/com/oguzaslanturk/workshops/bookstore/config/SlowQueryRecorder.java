@@ -0,0 +1,282 @@
+package com.oguzaslanturk.workshops.bookstore.config;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Driver level listener that records queries slower than {@code bookstore.slow-queries.threshold} in a ring
+ * buffer, published by {@link SlowQueryEndpoint}. Only the shape of each query is kept while it runs. With
+ * {@code bookstore.slow-queries.explain} enabled the plan and examined documents of each slow query are captured
+ * with an {@code explain} in the background, which takes a copy of every query command to replay it.
+ */
+@Component
+public class SlowQueryRecorder implements CommandListener, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(SlowQueryRecorder.class);
+
+    private static final Set<String> QUERY_COMMANDS = Set.of("find", "count", "aggregate", "distinct");
+    private static final Map<String, String> FILTER_FIELDS =
+            Map.of("find", "filter", "count", "query", "aggregate", "pipeline", "distinct", "query");
+    private static final Set<String> SESSION_FIELDS = Set.of("lsid", "txnNumber", "autocommit", "startTransaction");
+    private static final BsonString PLACEHOLDER = new BsonString("?");
+    private static final String SORT_STAGE = "SORT";
+
+    private final long thresholdNanos;
+
+    private final int capacity;
+
+    private final boolean explain;
+
+    private final ObjectProvider<MongoTemplate> mongoTemplate;
+
+    private final Map<Integer, StartedQuery> startedQueries = new ConcurrentHashMap<>();
+
+    // ring buffer guarded by itself, head is the slot of the most recent query
+    private final SlowQueryDto[] slowQueries;
+
+    private int head = -1;
+
+    private int size;
+
+    // a single background thread, explains that do not fit the queue are dropped
+    private final ThreadPoolExecutor explainExecutor;
+
+    public SlowQueryRecorder(@Value("${bookstore.slow-queries.threshold:100ms}") Duration threshold,
+                             @Value("${bookstore.slow-queries.capacity:100}") int capacity,
+                             @Value("${bookstore.slow-queries.explain:false}") boolean explain,
+                             ObjectProvider<MongoTemplate> mongoTemplate) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("bookstore.slow-queries.capacity must be at least 1");
+        }
+        this.thresholdNanos = threshold.toNanos();
+        this.capacity = capacity;
+        this.explain = explain;
+        this.mongoTemplate = mongoTemplate;
+        this.slowQueries = new SlowQueryDto[capacity];
+        this.explainExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capacity),
+                runnable -> {
+                    final Thread thread = new Thread(runnable, "slow-query-explain");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        final String commandName = event.getCommandName();
+        if (QUERY_COMMANDS.contains(commandName)) {
+            // the event's document is only valid during the callback, what is needed of it is copied out
+            final BsonDocument command = event.getCommand();
+            startedQueries.put(event.getRequestId(), new StartedQuery(event.getDatabaseName(),
+                    command.get(commandName).isString() ? command.getString(commandName).getValue() : null,
+                    getShape(commandName, command),
+                    explain ? command.clone() : null));
+        }
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        final StartedQuery started = startedQueries.remove(event.getRequestId());
+        if (started == null || event.getElapsedTime(TimeUnit.NANOSECONDS) < thresholdNanos) {
+            return;
+        }
+        final String commandName = event.getCommandName();
+        final SlowQueryDto slowQuery = new SlowQueryDto();
+        slowQuery.setTimestamp(Instant.now());
+        slowQuery.setCommand(commandName);
+        slowQuery.setCollection(started.collection);
+        slowQuery.setShape(started.shape.toJson());
+        slowQuery.setDurationMillis(event.getElapsedTime(TimeUnit.MILLISECONDS));
+        slowQuery.setDocsReturned(getDocsReturned(event.getResponse()));
+        log.warn("Slow {} on {} took {} ms and returned {} documents, shape {}", commandName,
+                slowQuery.getCollection(), slowQuery.getDurationMillis(), slowQuery.getDocsReturned(), slowQuery.getShape());
+
+        synchronized (slowQueries) {
+            head = head + 1 == capacity ? 0 : head + 1;
+            slowQueries[head] = slowQuery;
+            size = Math.min(size + 1, capacity);
+        }
+        if (explain) {
+            explainExecutor.execute(() -> explain(slowQuery, started));
+        }
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        startedQueries.remove(event.getRequestId());
+    }
+
+    /**
+     * Recorded slow queries, the most recent first.
+     */
+    public List<SlowQueryDto> getSlowQueries() {
+        synchronized (slowQueries) {
+            final List<SlowQueryDto> recent = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                recent.add(slowQueries[Math.floorMod(head - i, capacity)]);
+            }
+            return recent;
+        }
+    }
+
+    public void clear() {
+        synchronized (slowQueries) {
+            Arrays.fill(slowQueries, null);
+            head = -1;
+            size = 0;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        explainExecutor.shutdownNow();
+    }
+
+    private void explain(SlowQueryDto slowQuery, StartedQuery started) {
+        final BsonDocument command = new BsonDocument();
+        started.command.forEach((key, value) -> {
+            if (!key.startsWith("$") && !SESSION_FIELDS.contains(key)) {
+                command.append(key, value);
+            }
+        });
+        try {
+            final Document explained = mongoTemplate.getObject()
+                    .getMongoDatabaseFactory()
+                    .getMongoDatabase(started.database)
+                    .runCommand(new BsonDocument("explain", command).append("verbosity", new BsonString("executionStats")));
+            final Document executionStats = explained.get("executionStats", Document.class);
+            final Document queryPlanner = explained.get("queryPlanner", Document.class);
+            final List<String> stages = queryPlanner != null
+                    ? getStages(queryPlanner.get("winningPlan", Document.class))
+                    : List.of();
+            // recorded queries may already have been handed out, so the explained one replaces its entry
+            final SlowQueryDto explainedQuery = new SlowQueryDto(slowQuery.getTimestamp(),
+                    slowQuery.getCommand(),
+                    slowQuery.getCollection(),
+                    slowQuery.getShape(),
+                    slowQuery.getDurationMillis(),
+                    slowQuery.getDocsReturned(),
+                    executionStats != null && executionStats.get("totalDocsExamined") instanceof Number
+                            ? ((Number) executionStats.get("totalDocsExamined")).longValue()
+                            : null,
+                    stages.isEmpty() ? null : String.join(" <- ", stages),
+                    stages.isEmpty() ? null : stages.contains(SORT_STAGE));
+            synchronized (slowQueries) {
+                for (int i = 0; i < capacity; i++) {
+                    if (slowQueries[i] == slowQuery) {
+                        slowQueries[i] = explainedQuery;
+                        break;
+                    }
+                }
+            }
+            log.warn("Slow {} on {} examined {} documents with plan {}", explainedQuery.getCommand(),
+                    explainedQuery.getCollection(), explainedQuery.getDocsExamined(), explainedQuery.getPlan());
+        } catch (RuntimeException e) {
+            log.warn("Could not explain slow {} on {}", slowQuery.getCommand(), slowQuery.getCollection(), e);
+        }
+    }
+
+    private static List<String> getStages(Document plan) {
+        final List<String> stages = new ArrayList<>();
+        Document stage = plan;
+        while (stage != null) {
+            stages.add(stage.getString("stage"));
+            final Object input = stage.containsKey("inputStage")
+                    ? stage.get("inputStage")
+                    : stage.get("inputStages") instanceof List && !((List<?>) stage.get("inputStages")).isEmpty()
+                    ? ((List<?>) stage.get("inputStages")).get(0)
+                    : null;
+            stage = input instanceof Document ? (Document) input : null;
+        }
+        return stages;
+    }
+
+    private static BsonDocument getShape(String commandName, BsonDocument command) {
+        final BsonDocument shape = new BsonDocument();
+        final String filterField = FILTER_FIELDS.get(commandName);
+        if (command.containsKey(filterField)) {
+            shape.append(filterField, redact(command.get(filterField)));
+        }
+        if (command.containsKey("sort")) {
+            shape.append("sort", command.get("sort").asDocument().clone());
+        }
+        return shape;
+    }
+
+    /**
+     * Replaces the values of a filter with placeholders so queries differing only in their values share a shape.
+     */
+    private static BsonValue redact(BsonValue value) {
+        if (value.isDocument()) {
+            final BsonDocument shape = new BsonDocument();
+            value.asDocument().forEach((key, nested) -> shape.append(key, redact(nested)));
+            return shape;
+        }
+        if (value.isArray()) {
+            final BsonArray shape = new BsonArray();
+            for (BsonValue nested : value.asArray()) {
+                if (nested.isDocument() || nested.isArray()) {
+                    shape.add(redact(nested));
+                }
+            }
+            return shape.isEmpty() ? PLACEHOLDER : shape;
+        }
+        return PLACEHOLDER;
+    }
+
+    private static Long getDocsReturned(BsonDocument response) {
+        if (response.isDocument("cursor") && response.getDocument("cursor").isArray("firstBatch")) {
+            return (long) response.getDocument("cursor").getArray("firstBatch").size();
+        }
+        if (response.isNumber("n")) {
+            return response.getNumber("n").longValue();
+        }
+        if (response.isArray("values")) {
+            return (long) response.getArray("values").size();
+        }
+        return null;
+    }
+
+    private static final class StartedQuery {
+        private final String database;
+        private final String collection;
+        private final BsonDocument shape;
+        // only kept to explain the query
+        private final BsonDocument command;
+
+        private StartedQuery(String database, String collection, BsonDocument shape, BsonDocument command) {
+            this.database = database;
+            this.collection = collection;
+            this.shape = shape;
+            this.command = command;
+        }
+    }
+}
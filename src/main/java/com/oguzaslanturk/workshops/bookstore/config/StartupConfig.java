@@ -0,0 +1,20 @@
+package com.oguzaslanturk.workshops.bookstore.config;
+
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+/**
+ * Beans created on startup even with {@code spring.main.lazy-initialization}, as used by the {@code prod} profile.
+ * The template builds the mapping metadata of the documents and the Mongo client, which the first request
+ * would otherwise wait for.
+ */
+@Configuration
+public class StartupConfig {
+
+    @Bean
+    public static LazyInitializationExcludeFilter eagerMongoTemplate() {
+        return LazyInitializationExcludeFilter.forBeanTypes(MongoTemplate.class);
+    }
+}
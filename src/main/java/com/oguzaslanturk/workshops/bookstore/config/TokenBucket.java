@@ -0,0 +1,46 @@
+package com.oguzaslanturk.workshops.bookstore.config;
+
+/**
+ * Token bucket holding up to {@code capacity} tokens, refilled continuously at {@code refillPerSecond}.
+ * Times are nanosecond ticks, such as {@link System#nanoTime()}, passed in by the caller.
+ */
+public class TokenBucket {
+
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final double capacity;
+
+    private final double refillPerNano;
+
+    private double tokens;
+
+    private long refilledAt;
+
+    public TokenBucket(double capacity, double refillPerSecond, long now) {
+        this.capacity = capacity;
+        this.refillPerNano = refillPerSecond / NANOS_PER_SECOND;
+        this.tokens = capacity;
+        this.refilledAt = now;
+    }
+
+    /**
+     * Takes {@code cost} tokens and returns 0, or takes none and returns the nanoseconds until enough have
+     * refilled. A cost above the capacity is charged as a full bucket.
+     */
+    public synchronized long tryConsume(double cost, long now) {
+        refill(now);
+        final double charged = Math.min(cost, capacity);
+        if (tokens >= charged) {
+            tokens -= charged;
+            return 0;
+        }
+        return (long) Math.ceil((charged - tokens) / refillPerNano);
+    }
+
+    private void refill(long now) {
+        if (now - refilledAt > 0) {
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * refillPerNano);
+            refilledAt = now;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.oguzaslanturk.workshops.bookstore.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Opt-in mode that serves requests and runs the {@code getAll} count on virtual threads, so a request
+ * blocked on Mongo no longer holds a platform thread. The executor is looked up reflectively because the
+ * build still targets Java 11; enabling the mode requires a Java 21 or newer runtime.
+ */
+@Configuration
+@ConditionalOnProperty(name = "bookstore.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+
+    public static final String VIRTUAL_THREAD_EXECUTOR = "virtualThreadExecutor";
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadConfig.class);
+
+    @Bean(name = VIRTUAL_THREAD_EXECUTOR, destroyMethod = "shutdown")
+    public ExecutorService virtualThreadExecutor() {
+        try {
+            final ExecutorService executor = (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+            log.info("Serving requests on virtual threads");
+            return executor;
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("bookstore.virtual-threads.enabled requires a Java 21 or newer runtime, "
+                    + "running on " + System.getProperty("java.version"), e);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not create the virtual thread executor", e);
+        }
+    }
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer(ExecutorService virtualThreadExecutor) {
+        return protocolHandler -> protocolHandler.setExecutor(virtualThreadExecutor);
+    }
+}
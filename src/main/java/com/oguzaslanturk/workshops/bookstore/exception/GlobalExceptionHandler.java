@@ -4,6 +4,9 @@ import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -24,12 +27,14 @@ import java.util.Map;
 import java.util.stream.Collectors;
 
 @ControllerAdvice
+@Profile("!reactive")
 public class GlobalExceptionHandler extends ResponseEntityExceptionHandler {
 
     private static final Logger log = LoggerFactory.getLogger(GlobalExceptionHandler.class);
 
     public static final String ACCESS_DENIED = "Access denied!";
     public static final String INVALID_REQUEST = "Invalid request";
+    public static final String DUPLICATE_BOOK = "A book with the same id or ISBN already exists";
     public static final String ERROR_MESSAGE_TEMPLATE = "message: %s %n requested uri: %s";
     public static final String LIST_JOIN_DELIMITER = ",";
     public static final String FIELD_ERROR_SEPARATOR = ": ";
@@ -73,6 +78,34 @@ public class GlobalExceptionHandler extends ResponseEntityExceptionHandler {
         return getExceptionResponseEntity(exception, HttpStatus.BAD_REQUEST, request, validationErrors);
     }
 
+    @ExceptionHandler({ OptimisticLockingFailureException.class })
+    public ResponseEntity<Object> handleOptimisticLockingFailure(
+            OptimisticLockingFailureException exception, WebRequest request) {
+        return getExceptionResponseEntity(exception, HttpStatus.PRECONDITION_FAILED, request,
+                Collections.singletonList(exception.getLocalizedMessage()));
+    }
+
+    /**
+     * A book saved with the id or ISBN of another one. The driver's message names the index and the key, neither
+     * of which is the client's business.
+     */
+    @ExceptionHandler({ DuplicateKeyException.class })
+    public ResponseEntity<Object> handleDuplicateKey(DuplicateKeyException exception, WebRequest request) {
+        return getExceptionResponseEntity(exception, HttpStatus.CONFLICT, request,
+                Collections.singletonList(DUPLICATE_BOOK));
+    }
+
+    @ExceptionHandler({ TooManyRequestsException.class })
+    public ResponseEntity<Object> handleTooManyRequests(TooManyRequestsException exception, WebRequest request) {
+        final ResponseEntity<Object> response = getExceptionResponseEntity(exception, HttpStatus.TOO_MANY_REQUESTS,
+                request, Collections.singletonList(exception.getLocalizedMessage()));
+        // whole seconds, rounded up so clients do not retry before capacity is back
+        final long retryAfterSeconds = Math.max(1, (exception.getRetryAfter().toMillis() + 999) / 1000);
+        return ResponseEntity.status(response.getStatusCode())
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                .body(response.getBody());
+    }
+
     /**
      * A general handler for all uncaught exceptions
      */
@@ -0,0 +1,134 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+import com.oguzaslanturk.workshops.bookstore.config.ReactiveWebConfig;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+
+import java.util.Arrays;
+
+import static org.mockito.ArgumentMatchers.any;
+
+/**
+ * The part of the {@code /books} contract the reactive stack shares with {@link BookController}, checked with the
+ * same requests and responses as {@link BookControllerTest}.
+ */
+@WebFluxTest(controllers = ReactiveBookController.class)
+@Import(ReactiveWebConfig.class)
+@ActiveProfiles("reactive")
+public class ReactiveBookControllerTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @MockBean
+    private ReactiveBookService bookService;
+
+    private final static BookDto BOOK1 = new BookDto("1", "The Little Prince", "9786059681001");
+    private final static BookDto BOOK2 = new BookDto("2", "Animal Farm", "9786257678322");
+    private final static BookDto BOOK3 = new BookDto("3", "Alice's Adventures in Wonderland", "9786059681100");
+
+    @Test
+    public void givenExistingId_whenGetById_thenSuccess() {
+        Mockito.when(bookService.getById(BOOK1.getId())).thenReturn(Mono.just(BOOK1));
+
+        webTestClient.get().uri("/books/1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.id").isEqualTo("1")
+                .jsonPath("$.name").isEqualTo("The Little Prince");
+    }
+
+    @Test
+    public void givenMissingId_whenGetById_thenNotFound() {
+        Mockito.when(bookService.getById("5")).thenReturn(Mono.empty());
+
+        webTestClient.get().uri("/books/5")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    public void givenNone_whenGetAll_thenFirstPageOfTwenty() {
+        Mockito.when(bookService.getAll(new BookDto(), new BookSearchOptions(), PageRequest.of(0, 20)))
+                .thenReturn(Mono.just(new BookPageDto(0, 1, 3, Arrays.asList(BOOK1, BOOK2, BOOK3))));
+
+        webTestClient.get().uri("/books/")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.currentPage").isEqualTo(0)
+                .jsonPath("$.totalPages").isEqualTo(1)
+                .jsonPath("$.totalItems").isEqualTo(3)
+                .jsonPath("$.totalExact").isEqualTo(true)
+                .jsonPath("$.books.length()").isEqualTo(3)
+                .jsonPath("$.books[1].name").isEqualTo("Animal Farm");
+    }
+
+    @Test
+    public void givenNameFilterAndPage_whenGetAll_thenPassedToService() {
+        Mockito.when(bookService.getAll(BookDto.builder().name("Animal").build(), new BookSearchOptions(),
+                        PageRequest.of(1, 2)))
+                .thenReturn(Mono.just(new BookPageDto(1, 1, 1, Arrays.asList(BOOK2))));
+
+        webTestClient.get().uri("/books/?name=Animal&page=1&size=2")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.books[0].name").isEqualTo("Animal Farm");
+    }
+
+    @Test
+    public void givenNewBook_whenSave_thenCreated() {
+        final BookDto book = BookDto.builder().name("Peter Pan").isbn("9786059489836").build();
+        Mockito.when(bookService.save(book)).thenReturn(Mono.just(new BookDto("4", "Peter Pan", "9786059489836")));
+
+        webTestClient.post().uri("/books/")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(book)
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody()
+                .jsonPath("$.id").isEqualTo("4");
+    }
+
+    @Test
+    public void givenInvalidIsbn_whenSave_thenBadRequest() {
+        webTestClient.post().uri("/books/")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(BookDto.builder().name("Peter Pan").isbn("978").build())
+                .exchange()
+                .expectStatus().isBadRequest();
+
+        Mockito.verify(bookService, Mockito.never()).save(any(BookDto.class));
+    }
+
+    @Test
+    public void givenMissingBook_whenUpdate_thenNotFound() {
+        Mockito.when(bookService.update(BOOK3)).thenReturn(Mono.empty());
+
+        webTestClient.put().uri("/books/")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(BOOK3)
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    public void givenExistingAndMissingIds_whenDelete_thenNoContentOrNotFound() {
+        Mockito.when(bookService.deleteById("1")).thenReturn(Mono.just(true));
+        Mockito.when(bookService.deleteById("5")).thenReturn(Mono.just(false));
+
+        webTestClient.delete().uri("/books/1").exchange().expectStatus().isNoContent();
+        webTestClient.delete().uri("/books/5").exchange().expectStatus().isNotFound();
+    }
+}
@@ -0,0 +1,60 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+import javax.validation.Valid;
+
+/**
+ * Part of the {@code /books} contract of {@link BookController} served by WebFlux when the {@code reactive}
+ * profile is active: reads by id, offset paged listing, create, replace and delete. Cursor pagination, search,
+ * export, import, PATCH, batch gets and ETag/If-Match versioning are only served by {@link BookController}.
+ */
+@RestController
+@Profile("reactive")
+@RequestMapping(path = "/books", produces = MediaType.APPLICATION_JSON_VALUE)
+public class ReactiveBookController {
+
+    private final ReactiveBookService bookService;
+
+    @Autowired
+    public ReactiveBookController(ReactiveBookService bookService) {
+        this.bookService = bookService;
+    }
+
+    @GetMapping(path = "/{id}")
+    public Mono<ResponseEntity<BookDto>> getById(@PathVariable String id) {
+        return bookService.getById(id)
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    @GetMapping("/")
+    public Mono<ResponseEntity<BookPageDto>> getAll(BookDto bookDto, BookSearchOptions options, Pageable pageable) {
+        return bookService.getAll(bookDto, options, pageable).map(ResponseEntity::ok);
+    }
+
+    @PostMapping("/")
+    public Mono<ResponseEntity<BookDto>> save(@RequestBody @Valid BookDto bookDto) {
+        return bookService.save(bookDto).map(book -> ResponseEntity.status(HttpStatus.CREATED).body(book));
+    }
+
+    @PutMapping("/")
+    public Mono<ResponseEntity<BookDto>> update(@RequestBody @Valid BookDto bookDto) {
+        return bookService.update(bookDto)
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    @DeleteMapping("/{id}")
+    public Mono<ResponseEntity<Void>> deleteById(@PathVariable String id) {
+        return bookService.deleteById(id)
+                .map(deleted -> deleted ? ResponseEntity.noContent().<Void>build() : ResponseEntity.notFound().<Void>build());
+    }
+}
@@ -0,0 +1,8 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ReactiveBookRepository extends ReactiveMongoRepository<Book, String> {
+}
@@ -0,0 +1,12 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+import org.springframework.data.domain.Pageable;
+import reactor.core.publisher.Mono;
+
+public interface ReactiveBookService {
+    Mono<BookDto> getById(String id);
+    Mono<BookPageDto> getAll(BookDto searchData, BookSearchOptions options, Pageable pageable);
+    Mono<BookDto> save(BookDto bookData);
+    Mono<BookDto> update(BookDto bookData);
+    Mono<Boolean> deleteById(String id);
+}
@@ -0,0 +1,104 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+import com.oguzaslanturk.workshops.bookstore.exception.InvalidQueryException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Non-blocking counterpart of {@link BookServiceImpl} on the reactive Mongo driver.
+ * Counting supports {@link CountMode#EXACT} and {@link CountMode#NONE}; the other modes count exactly.
+ */
+@Service
+@Profile("reactive")
+public class ReactiveBookServiceImpl implements ReactiveBookService {
+
+    private final ReactiveBookRepository bookRepository;
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    private final BookQueryPlanner queryPlanner;
+
+    @Autowired
+    public ReactiveBookServiceImpl(ReactiveBookRepository bookRepository,
+                                   ReactiveMongoTemplate mongoTemplate,
+                                   BookQueryPlanner queryPlanner) {
+        this.bookRepository = bookRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.queryPlanner = queryPlanner;
+    }
+
+    @Override
+    public Mono<BookDto> getById(String id) {
+        return bookRepository.findById(id).map(BookMapper::toDto);
+    }
+
+    @Override
+    public Mono<BookPageDto> getAll(BookDto searchData, BookSearchOptions options, Pageable requested) {
+        final Pageable pageable;
+        try {
+            pageable = queryPlanner.plan(requested);
+        } catch (InvalidQueryException e) {
+            return Mono.error(e);
+        }
+        final Query query = BookQueries.addSearchCriteria(new Query().with(pageable), searchData, options.getMatch());
+        try {
+            BookQueries.addProjection(query, options.getFields());
+        } catch (InvalidQueryException e) {
+            return Mono.error(e);
+        }
+        return mongoTemplate.query(Book.class)
+                .as(BookDto.class)
+                .matching(query)
+                .all()
+                .collectList()
+                .flatMap(books -> toPage(query, books, pageable, options.getCount()));
+    }
+
+    @Override
+    public Mono<BookDto> save(BookDto bookData) {
+        return bookRepository.save(BookMapper.toEntity(bookData)).map(BookMapper::toDto);
+    }
+
+    @Override
+    public Mono<BookDto> update(BookDto bookData) {
+        return mongoTemplate.findAndModify(BookQueries.getVersionedIdQuery(bookData.getId(), null),
+                        BookQueries.getReplaceUpdate(bookData),
+                        FindAndModifyOptions.options().returnNew(true).upsert(false),
+                        Book.class)
+                .map(BookMapper::toDto);
+    }
+
+    @Override
+    public Mono<Boolean> deleteById(String id) {
+        return mongoTemplate.remove(BookQueries.getVersionedIdQuery(id, null), Book.class)
+                .map(result -> result.getDeletedCount() > 0);
+    }
+
+    private Mono<BookPageDto> toPage(Query query, List<BookDto> books, Pageable pageable, CountMode countMode) {
+        final long offset = pageable.isPaged() ? pageable.getOffset() : 0;
+        // a page that is not full tells the total on its own, as in PageableExecutionUtils
+        if (pageable.isUnpaged() || (books.size() < pageable.getPageSize() && (offset == 0 || !books.isEmpty()))) {
+            return Mono.just(toPage(books, pageable, offset + books.size(), true));
+        }
+        if (countMode == CountMode.NONE) {
+            return Mono.just(toPage(books, pageable, offset + books.size(), false));
+        }
+        return mongoTemplate.count(Query.of(query).limit(-1).skip(-1), Book.class)
+                .map(total -> toPage(books, pageable, total, true));
+    }
+
+    private BookPageDto toPage(List<BookDto> books, Pageable pageable, long total, boolean exact) {
+        final Page<BookDto> page = new PageImpl<>(books, pageable, total);
+        return new BookPageDto(pageable.getPageNumber(), page.getTotalPages(), page.getTotalElements(), exact, books);
+    }
+}
@@ -0,0 +1,140 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Runs against a single node replica set in a container, change streams are not available on a standalone server.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@Testcontainers
+public class BookChangeStreamIT {
+
+    @Container
+    private static final MongoDBContainer MONGO = new MongoDBContainer(DockerImageName.parse("mongo:4.4"));
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @DynamicPropertySource
+    static void mongoProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.data.mongodb.host", MONGO::getHost);
+        registry.add("spring.data.mongodb.port", () -> MONGO.getMappedPort(27017));
+        registry.add("spring.data.mongodb.database", () -> "bookstore");
+        registry.add("bookstore.change-stream.consumer", () -> "change-stream-it");
+        registry.add("bookstore.change-stream.token-save-interval", () -> "0s");
+    }
+
+    @TestConfiguration
+    static class BookChangedEvents {
+        private final BlockingQueue<BookChangedEvent> events = new LinkedBlockingQueue<>();
+
+        @EventListener
+        public void onBookChanged(BookChangedEvent event) {
+            events.add(event);
+        }
+    }
+
+    @Autowired
+    private BookChangedEvents bookChangedEvents;
+
+    @Autowired
+    private BookService bookService;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private BookChangeStreamListener changeStreamListener;
+
+    @Autowired
+    private BookCountCache countCache;
+
+    @BeforeEach
+    public void setUp() {
+        bookChangedEvents.events.clear();
+    }
+
+    @Test
+    public void givenWrites_whenWatching_thenInsertUpdateAndDeleteArePublished() throws Exception {
+        bookRepository.save(new Book("it-1", "Peter Pan", "9786059489836"));
+        assertEquals(BookChangedEvent.Type.INSERTED, awaitEvent("it-1").getType());
+
+        bookService.patch("it-1", BookDto.builder().name("Peter and Wendy").build(), null);
+        assertEquals(BookChangedEvent.Type.UPDATED, awaitEvent("it-1").getType());
+
+        bookService.deleteById("it-1");
+        assertEquals(BookChangedEvent.Type.DELETED, awaitEvent("it-1").getType());
+    }
+
+    @Test
+    public void givenCachedBook_whenAnotherInstanceUpdatesIt_thenCacheEntryAndCountsAreEvicted() throws Exception {
+        bookRepository.save(new Book("it-2", "Peter Pan", "9786059489843"));
+        awaitEvent("it-2");
+        bookService.getById("it-2");
+        final Cache cache = cacheManager.getCache(BookServiceImpl.BOOKS_CACHE);
+        assertNotNull(cache.get("it-2"));
+        final String nameFilter = "{\"name\": \"Peter Pan\"}";
+        countCache.put(nameFilter, 1);
+
+        // written around the service, as another instance would
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is("it-2")),
+                Update.update("name", "Peter and Wendy"), Book.class);
+
+        awaitEvent("it-2");
+        assertNull(cache.get("it-2"));
+        assertNull(countCache.get(nameFilter));
+        assertEquals("Peter and Wendy", bookService.getById("it-2").getName());
+    }
+
+    @Test
+    public void givenStoppedListener_whenRestarted_thenMissedChangesArePublished() throws Exception {
+        changeStreamListener.stop();
+        bookRepository.save(new Book("it-3", "Peter Pan", "9786059489850"));
+
+        changeStreamListener.start();
+
+        assertEquals(BookChangedEvent.Type.INSERTED, awaitEvent("it-3").getType());
+    }
+
+    private BookChangedEvent awaitEvent(String id) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (System.nanoTime() < deadline) {
+            final BookChangedEvent event = bookChangedEvents.events.poll(100, TimeUnit.MILLISECONDS);
+            if (event != null && id.equals(event.getId())) {
+                return event;
+            }
+        }
+        return fail("No change of book " + id + " was published within " + TIMEOUT_SECONDS + " seconds");
+    }
+}
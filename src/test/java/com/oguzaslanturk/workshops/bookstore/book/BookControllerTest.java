@@ -1,35 +1,94 @@
 package com.oguzaslanturk.workshops.bookstore.book;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.oguzaslanturk.workshops.bookstore.exception.GlobalExceptionHandler;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.hamcrest.Matchers.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
-@WebMvcTest(BookController.class)
+@WebMvcTest(controllers = BookController.class)
+@Import(BookQueryPlanner.class)
 public class BookControllerTest {
 
+    @TestConfiguration
+    static class ControllerTestConfig {
+
+        @Bean
+        public AdmissionClock admissionClock() {
+            return new AdmissionClock();
+        }
+
+        @Bean
+        public MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    /**
+     * Moves a second ahead on every read, which refills the bucket the tests share, unless it is stopped.
+     */
+    static class AdmissionClock implements Ticker {
+
+        private final AtomicLong nanos = new AtomicLong();
+
+        private volatile boolean stopped;
+
+        @Override
+        public long read() {
+            return stopped ? nanos.get() : nanos.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        }
+    }
+
     @Autowired
     private MockMvc mockMvc;
 
     @Autowired
     private ObjectMapper mapper;
 
+    @Autowired
+    private AdmissionClock admissionClock;
+
     @MockBean
     private BookService bookService;
 
+    @MockBean
+    private BookImportService bookImportService;
+
     private final static BookDto BOOK1 = new BookDto("1", "The Little Prince", "9786059681001");
     private final static BookDto BOOK2 = new BookDto("2", "Animal Farm", "9786257678322");
     private final static BookDto BOOK3 = new BookDto("3", "Alice's Adventures in Wonderland", "9786059681100");
@@ -46,6 +105,70 @@ public class BookControllerTest {
                 .andExpect(jsonPath("$.name", is("The Little Prince")));
     }
 
+    @Test
+    public void givenVersionedBook_whenGetById_thenETagAndCacheControl() throws Exception {
+        Mockito.when(bookService.getById(BOOK1.getId()))
+                .thenReturn(new BookDto(BOOK1.getId(), BOOK1.getName(), BOOK1.getIsbn(), 4L));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/books/1")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"4\""))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=60, must-revalidate, public"))
+                .andExpect(jsonPath("$.version", is(4)));
+    }
+
+    @Test
+    public void givenCurrentETag_whenGetById_thenNotModified() throws Exception {
+        Mockito.when(bookService.getById(BOOK1.getId()))
+                .thenReturn(new BookDto(BOOK1.getId(), BOOK1.getName(), BOOK1.getIsbn(), 4L));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/books/1")
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"4\"")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    public void givenIds_whenGetByIds_thenBooksInRequestOrderAndMissingIds() throws Exception {
+        Mockito.when(bookService.getByIds(Arrays.asList("2", "5", "1")))
+                .thenReturn(new BookBatchDto(Arrays.asList(BOOK2, BOOK1), Collections.singletonList("5")));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .post("/books/batch-get")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"ids\":[\"2\",\"5\",\"1\"]}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.books[0].id", is("2")))
+                .andExpect(jsonPath("$.books[1].id", is("1")))
+                .andExpect(jsonPath("$.missing", contains("5")));
+    }
+
+    @Test
+    public void givenNoIds_whenGetByIds_thenBadRequest() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders
+                        .post("/books/batch-get")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"ids\":[]}"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void givenNullOrBlankIds_whenGetByIds_thenBadRequest() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders
+                        .post("/books/batch-get")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"ids\":[\"1\",null,\" \"]}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error", containsInAnyOrder("ids[1]: must not be blank",
+                        "ids[2]: must not be blank")));
+
+        Mockito.verify(bookService, Mockito.never()).getByIds(any());
+    }
+
     @Test
     public void givenNonExistingId_whenGetById_thenNotFound() throws Exception {
         Mockito.when(bookService.getById("5")).thenReturn(null);
@@ -63,7 +186,7 @@ public class BookControllerTest {
                 3,
                 new ArrayList<>(Arrays.asList(BOOK1, BOOK2, BOOK3)));
 
-        Mockito.when(bookService.getAll(new BookDto(), PageRequest.of(0, 20))).thenReturn(bookPageDto);
+        Mockito.when(bookService.getAll(new BookDto(), new BookSearchOptions(), PageRequest.of(0, 20))).thenReturn(bookPageDto);
 
         mockMvc.perform(MockMvcRequestBuilders
                         .get("/books/")
@@ -72,10 +195,71 @@ public class BookControllerTest {
                 .andExpect(jsonPath("$.currentPage", is(0)))
                 .andExpect(jsonPath("$.totalPages", is(1)))
                 .andExpect(jsonPath("$.totalItems", is(3)))
+                .andExpect(jsonPath("$.totalExact", is(true)))
                 .andExpect(jsonPath("$.books", hasSize(3)))
                 .andExpect(jsonPath("$.books[1].name", is("Animal Farm")));
     }
 
+    @Test
+    public void givenPage_whenGetAll_thenSameJsonAsBeanSerialization() throws Exception {
+        BookPageDto bookPageDto = new BookPageDto(0,
+                2,
+                21,
+                false,
+                new ArrayList<>(Arrays.asList(new BookDto("1", "Zürich \"Notes\"", "9786059681001", 2L),
+                        new BookDto(null, "Animal Farm", null))));
+
+        Mockito.when(bookService.getAll(new BookDto(), new BookSearchOptions(), PageRequest.of(0, 20))).thenReturn(bookPageDto);
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/books/")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(new ObjectMapper().writeValueAsBytes(bookPageDto)));
+    }
+
+    @Test
+    public void givenClientFloodingRegexSearches_whenGetAll_thenTooManyRequestsAndOthersServed() throws Exception {
+        Mockito.when(bookService.getAll(any(), any(), any()))
+                .thenReturn(new BookPageDto(0, 0, 0, Collections.emptyList()));
+        Mockito.when(bookService.getById(BOOK1.getId())).thenReturn(BOOK1);
+
+        admissionClock.stopped = true;
+        try {
+            // a substring name filter with an exact count costs 13 of the 200 tokens, a new client id each time
+            // does not get the flooding client a new bucket
+            for (int i = 0; i < 15; i++) {
+                mockMvc.perform(MockMvcRequestBuilders
+                                .get("/books/?name=prince&match=CONTAINS")
+                                .header(BookAdmissionInterceptor.CLIENT_HEADER, "flooding-client-" + i)
+                                .with(request -> {
+                                    request.setRemoteAddr("10.0.0.1");
+                                    return request;
+                                }))
+                        .andExpect(status().isOk());
+            }
+            mockMvc.perform(MockMvcRequestBuilders
+                            .get("/books/?name=prince&match=CONTAINS")
+                            .header(BookAdmissionInterceptor.CLIENT_HEADER, "flooding-client-15")
+                            .with(request -> {
+                                request.setRemoteAddr("10.0.0.1");
+                                return request;
+                            }))
+                    .andExpect(status().isTooManyRequests())
+                    .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"));
+
+            mockMvc.perform(MockMvcRequestBuilders
+                            .get("/books/1")
+                            .with(request -> {
+                                request.setRemoteAddr("10.0.0.2");
+                                return request;
+                            }))
+                    .andExpect(status().isOk());
+        } finally {
+            admissionClock.stopped = false;
+        }
+    }
+
     @Test
     public void givenOneCharacterOfName_whenGetAll_thenFindOneBook() throws Exception {
         BookPageDto bookPageDto = new BookPageDto(0,
@@ -85,7 +269,7 @@ public class BookControllerTest {
 
         BookDto bookDto = new BookDto();
         bookDto.setName("a");
-        Mockito.when(bookService.getAll(bookDto, PageRequest.of(0, 20))).thenReturn(bookPageDto);
+        Mockito.when(bookService.getAll(bookDto, new BookSearchOptions(), PageRequest.of(0, 20))).thenReturn(bookPageDto);
 
         mockMvc.perform(MockMvcRequestBuilders
                         .get("/books/?name=a")
@@ -107,7 +291,7 @@ public class BookControllerTest {
 
         BookDto bookDto = new BookDto();
         bookDto.setName(BOOK2.getName());
-        Mockito.when(bookService.getAll(bookDto, PageRequest.of(0, 20))).thenReturn(bookPageDto);
+        Mockito.when(bookService.getAll(bookDto, new BookSearchOptions(), PageRequest.of(0, 20))).thenReturn(bookPageDto);
 
         mockMvc.perform(MockMvcRequestBuilders
                         .get("/books/?name=" + BOOK2.getName())
@@ -130,7 +314,7 @@ public class BookControllerTest {
         final String name = "a name that does not exist!";
         BookDto bookDto = new BookDto();
         bookDto.setName(name);
-        Mockito.when(bookService.getAll(bookDto, PageRequest.of(0, 20))).thenReturn(bookPageDto);
+        Mockito.when(bookService.getAll(bookDto, new BookSearchOptions(), PageRequest.of(0, 20))).thenReturn(bookPageDto);
 
         mockMvc.perform(MockMvcRequestBuilders
                         .get("/books/?name=" + name)
@@ -151,7 +335,7 @@ public class BookControllerTest {
 
         BookDto bookDto = new BookDto();
         bookDto.setIsbn(BOOK1.getIsbn());
-        Mockito.when(bookService.getAll(bookDto, PageRequest.of(0, 20))).thenReturn(bookPageDto);
+        Mockito.when(bookService.getAll(bookDto, new BookSearchOptions(), PageRequest.of(0, 20))).thenReturn(bookPageDto);
 
         mockMvc.perform(MockMvcRequestBuilders
                         .get("/books/?isbn=" + BOOK1.getIsbn())
@@ -164,6 +348,42 @@ public class BookControllerTest {
                 .andExpect(jsonPath("$.books[0].name", is(BOOK1.getName())));
     }
 
+    @Test
+    public void givenCurrentETag_whenGetAll_thenNotModified() throws Exception {
+        BookPageDto bookPageDto = new BookPageDto(0,
+                1,
+                2,
+                new ArrayList<>(Arrays.asList(BOOK1, BOOK2)));
+        Mockito.when(bookService.getAll(new BookDto(), new BookSearchOptions(), PageRequest.of(0, 20))).thenReturn(bookPageDto);
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/books/")
+                        .header(HttpHeaders.IF_NONE_MATCH, BookETags.of(bookPageDto))
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    public void givenFields_whenGetAll_thenOnlyRequestedFieldsAreQueried() throws Exception {
+        BookPageDto bookPageDto = new BookPageDto(0,
+                1,
+                2,
+                new ArrayList<>(Arrays.asList(new BookDto(null, BOOK1.getName(), null),
+                        new BookDto(null, BOOK2.getName(), null))));
+
+        BookSearchOptions options = new BookSearchOptions();
+        options.setFields(Arrays.asList("name"));
+        Mockito.when(bookService.getAll(new BookDto(), options, PageRequest.of(0, 20))).thenReturn(bookPageDto);
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/books/?fields=name")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.books", hasSize(2)))
+                .andExpect(jsonPath("$.books[0].name", is(BOOK1.getName())))
+                .andExpect(jsonPath("$.books[0].isbn", nullValue()));
+    }
+
     @Test
     public void givenNonExistingIsbn_whenGetAll_thenFindNoBook() throws Exception {
         BookPageDto bookPageDto = new BookPageDto(0,
@@ -175,7 +395,7 @@ public class BookControllerTest {
 
         BookDto bookDto = new BookDto();
         bookDto.setIsbn(nonExistingIsbn);
-        Mockito.when(bookService.getAll(bookDto, PageRequest.of(0, 20))).thenReturn(bookPageDto);
+        Mockito.when(bookService.getAll(bookDto, new BookSearchOptions(), PageRequest.of(0, 20))).thenReturn(bookPageDto);
 
         mockMvc.perform(MockMvcRequestBuilders
                         .get("/books/?isbn=" + nonExistingIsbn)
@@ -187,6 +407,145 @@ public class BookControllerTest {
                 .andExpect(jsonPath("$.books", is(empty())));
     }
 
+    @Test
+    public void givenEstimatedCount_whenGetAll_thenTotalIsNotExact() throws Exception {
+        BookPageDto bookPageDto = new BookPageDto(0,
+                50,
+                1000,
+                false,
+                new ArrayList<>(Arrays.asList(BOOK1, BOOK2, BOOK3)));
+
+        BookSearchOptions options = BookSearchOptions.builder()
+                .count(CountMode.ESTIMATED)
+                .build();
+        Mockito.when(bookService.getAll(new BookDto(), options, PageRequest.of(0, 20))).thenReturn(bookPageDto);
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/books/?count=ESTIMATED")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalItems", is(1000)))
+                .andExpect(jsonPath("$.totalExact", is(false)))
+                .andExpect(jsonPath("$.books", hasSize(3)));
+    }
+
+    @Test
+    public void givenEmptyCursor_whenGetAll_thenFirstCursorPage() throws Exception {
+        BookCursorPageDto cursorPageDto = new BookCursorPageDto(2,
+                "bmV4dA",
+                new ArrayList<>(Arrays.asList(BOOK1, BOOK2)));
+
+        Mockito.when(bookService.getAllByCursor(new BookDto(), new BookSearchOptions(), "", PageRequest.of(0, 20))).thenReturn(cursorPageDto);
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/books/?cursor=")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.size", is(2)))
+                .andExpect(jsonPath("$.nextCursor", is("bmV4dA")))
+                .andExpect(jsonPath("$.books", hasSize(2)))
+                .andExpect(jsonPath("$.books[1].name", is("Animal Farm")));
+    }
+
+    @Test
+    public void givenLastCursor_whenGetAll_thenNoNextCursor() throws Exception {
+        BookCursorPageDto cursorPageDto = new BookCursorPageDto(1,
+                null,
+                new ArrayList<>(Arrays.asList(BOOK3)));
+
+        Mockito.when(bookService.getAllByCursor(new BookDto(), new BookSearchOptions(), "bmV4dA", PageRequest.of(0, 20))).thenReturn(cursorPageDto);
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/books/?cursor=bmV4dA")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.nextCursor", nullValue()))
+                .andExpect(jsonPath("$.books", hasSize(1)))
+                .andExpect(jsonPath("$.books[0].name", is(BOOK3.getName())));
+    }
+
+    @Test
+    public void givenWords_whenSearch_thenRankedHits() throws Exception {
+        BookSearchResultDto resultDto = new BookSearchResultDto("little prince",
+                NameMatchMode.TOKEN,
+                0,
+                new ArrayList<>(Arrays.asList(
+                        new BookSearchHitDto(BOOK1.getId(), BOOK1.getName(), BOOK1.getIsbn(), 1.5f),
+                        new BookSearchHitDto(BOOK3.getId(), BOOK3.getName(), BOOK3.getIsbn(), 0.6f))));
+
+        Mockito.when(bookService.search("little prince", NameMatchMode.TOKEN, PageRequest.of(0, 20))).thenReturn(resultDto);
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/books/search?q=little prince")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.mode", is("TOKEN")))
+                .andExpect(jsonPath("$.hits", hasSize(2)))
+                .andExpect(jsonPath("$.hits[0].name", is(BOOK1.getName())))
+                .andExpect(jsonPath("$.hits[0].score", is(1.5)));
+    }
+
+    @Test
+    public void givenContainsMatch_whenGetAll_thenSubstringSearchAskedFor() throws Exception {
+        BookPageDto bookPageDto = new BookPageDto(0,
+                1,
+                1,
+                new ArrayList<>(Arrays.asList(BOOK2)));
+
+        BookDto bookDto = new BookDto();
+        bookDto.setName("farm");
+        BookSearchOptions options = BookSearchOptions.builder()
+                .match(NameMatchMode.CONTAINS)
+                .build();
+        Mockito.when(bookService.getAll(bookDto, options, PageRequest.of(0, 20))).thenReturn(bookPageDto);
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/books/?name=farm&match=CONTAINS")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.books", hasSize(1)))
+                .andExpect(jsonPath("$.books[0].name", is(BOOK2.getName())));
+    }
+
+    @Test
+    public void givenNoMatchMode_whenGetAll_thenPrefixMatchByDefault() throws Exception {
+        BookDto bookDto = new BookDto();
+        bookDto.setName("anim");
+        BookSearchOptions options = BookSearchOptions.builder()
+                .match(NameMatchMode.PREFIX)
+                .build();
+        Mockito.when(bookService.getAll(bookDto, options, PageRequest.of(0, 20)))
+                .thenReturn(new BookPageDto(0, 1, 1, new ArrayList<>(Arrays.asList(BOOK2))));
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/books/?name=anim")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.books[0].name", is(BOOK2.getName())));
+    }
+
+    @Test
+    public void givenPrefixMatch_whenGetAll_thenFindOneBook() throws Exception {
+        BookPageDto bookPageDto = new BookPageDto(0,
+                1,
+                1,
+                new ArrayList<>(Arrays.asList(BOOK2)));
+
+        BookDto bookDto = new BookDto();
+        bookDto.setName("anim");
+        BookSearchOptions options = BookSearchOptions.builder()
+                .match(NameMatchMode.PREFIX)
+                .build();
+        Mockito.when(bookService.getAll(bookDto, options, PageRequest.of(0, 20))).thenReturn(bookPageDto);
+
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/books/?name=anim&match=PREFIX")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.books", hasSize(1)))
+                .andExpect(jsonPath("$.books[0].name", is(BOOK2.getName())));
+    }
+
     @Test
     public void givenBook_whenSave_thenSuccess() throws Exception {
         BookDto newBook = BookDto.builder()
@@ -208,6 +567,128 @@ public class BookControllerTest {
                 .andExpect(jsonPath("$.isbn", is("9786059489836")));
     }
 
+    @Test
+    public void givenBookWithExistingIsbn_whenSave_thenConflict() throws Exception {
+        BookDto newBook = BookDto.builder()
+                .id("4")
+                .name("Peter Pan")
+                .isbn(BOOK1.getIsbn())
+                .build();
+
+        Mockito.when(bookService.save(newBook))
+                .thenThrow(new DuplicateKeyException("E11000 duplicate key error collection: bookstore.books "
+                        + "index: isbn_unique dup key: { isbn: \"" + BOOK1.getIsbn() + "\" }"));
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/books/")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content(this.mapper.writeValueAsString(newBook)))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.status", is(409)))
+                .andExpect(jsonPath("$.error", contains(GlobalExceptionHandler.DUPLICATE_BOOK)));
+    }
+
+    @Test
+    public void givenIsbn_whenExport_thenStreamNdjson() throws Exception {
+        BookDto bookDto = new BookDto();
+        bookDto.setIsbn(BOOK1.getIsbn());
+        Mockito.doAnswer(invocation -> {
+            OutputStream out = invocation.getArgument(4);
+            out.write(this.mapper.writeValueAsBytes(BOOK1));
+            out.write('\n');
+            return null;
+        }).when(bookService).exportAll(eq(bookDto), eq(new BookSearchOptions()), eq(Sort.by("id")),
+                eq(BookDataFormat.NDJSON), any(OutputStream.class));
+
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders
+                        .get("/books/export?isbn=" + BOOK1.getIsbn()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string(new String(this.mapper.writeValueAsBytes(BOOK1), StandardCharsets.UTF_8) + "\n"));
+    }
+
+    @Test
+    public void givenSortWithoutIndex_whenExport_thenBadRequestBeforeStreaming() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/books/export?sort=version"))
+                .andExpect(request().asyncNotStarted())
+                .andExpect(status().isBadRequest());
+
+        Mockito.verify(bookService, Mockito.never()).exportAll(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    public void givenSortByName_whenExport_thenIdTiebreakerAdded() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/books/export?sort=name,desc"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        Mockito.verify(bookService, Mockito.timeout(1000)).exportAll(eq(new BookDto()), eq(new BookSearchOptions()),
+                eq(Sort.by(Sort.Direction.DESC, "name", "id")), eq(BookDataFormat.NDJSON), any(OutputStream.class));
+    }
+
+    @Test
+    public void givenCsvFormat_whenExport_thenStreamCsv() throws Exception {
+        Mockito.doAnswer(invocation -> {
+            OutputStream out = invocation.getArgument(4);
+            out.write("id,name,isbn\n".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(bookService).exportAll(eq(new BookDto()), eq(new BookSearchOptions()), eq(Sort.by("id")),
+                eq(BookDataFormat.CSV), any(OutputStream.class));
+
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders
+                        .get("/books/export?format=CSV"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(BookDataFormat.TEXT_CSV_VALUE))
+                .andExpect(content().string("id,name,isbn\n"));
+    }
+
+    @Test
+    public void givenNdjson_whenImport_thenBatchResults() throws Exception {
+        BookImportResultDto resultDto = new BookImportResultDto(3,
+                1,
+                new ArrayList<>(Collections.singletonList(new BookImportBatchDto(1, 2, 1, 1, 0, 0))),
+                new ArrayList<>(Collections.singletonList(
+                        new BookImportRejectionDto(2, Collections.singletonList("isbn: size must be between 11 and 13")))));
+
+        Mockito.when(bookImportService.importBooks(any(Reader.class), eq(BookDataFormat.NDJSON))).thenReturn(resultDto);
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/books/import")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Peter Pan\",\"isbn\":\"9786059489836\"}\n"
+                                + "{\"name\":\"Dune\",\"isbn\":\"1\"}\n"
+                                + "{\"name\":\"Emma\"}\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.records", is(3)))
+                .andExpect(jsonPath("$.rejected", is(1)))
+                .andExpect(jsonPath("$.batches[0].upserted", is(1)))
+                .andExpect(jsonPath("$.rejections[0].line", is(2)));
+    }
+
+    @Test
+    public void givenCsv_whenImport_thenCsvFormatIsUsed() throws Exception {
+        Mockito.when(bookImportService.importBooks(any(Reader.class), eq(BookDataFormat.CSV)))
+                .thenReturn(new BookImportResultDto());
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/books/import")
+                        .contentType(BookDataFormat.TEXT_CSV_VALUE)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content("name,isbn\n\"Peter Pan, or The Boy\",9786059489836\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.records", is(0)))
+                .andExpect(jsonPath("$.batches", is(empty())));
+    }
+
     @Test
     public void givenBook_whenUpdateNameAndIsbnForAnExistingId_thenSuccess() throws Exception {
         BookDto updatedBook = BookDto.builder()
@@ -216,8 +697,7 @@ public class BookControllerTest {
                 .isbn("9786059489836")
                 .build();
 
-        Mockito.when(bookService.getById(BOOK3.getId())).thenReturn(BOOK3);
-        Mockito.when(bookService.update(updatedBook)).thenReturn(updatedBook);
+        Mockito.when(bookService.update(updatedBook, null)).thenReturn(updatedBook);
 
         mockMvc.perform(MockMvcRequestBuilders.put("/books/")
                         .contentType(MediaType.APPLICATION_JSON)
@@ -231,6 +711,25 @@ public class BookControllerTest {
     }
 
 
+    @Test
+    public void givenStaleIfMatch_whenUpdate_thenPreconditionFailed() throws Exception {
+        BookDto updatedBook = BookDto.builder()
+                .id(BOOK3.getId())
+                .name("Peter Pan")
+                .isbn("9786059489836")
+                .build();
+
+        Mockito.when(bookService.update(updatedBook, 2L))
+                .thenThrow(new OptimisticLockingFailureException("Book 3 is no longer at version 2"));
+
+        mockMvc.perform(MockMvcRequestBuilders.put("/books/")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.IF_MATCH, "\"2\"")
+                        .content(this.mapper.writeValueAsString(updatedBook)))
+                .andExpect(status().isPreconditionFailed());
+    }
+
     @Test
     public void givenBook_whenUpdateNameAndIsbnForNonExistingId_thenNotFound() throws Exception {
         BookDto updatedBook = BookDto.builder()
@@ -239,7 +738,7 @@ public class BookControllerTest {
                 .isbn("9786059489836")
                 .build();
 
-        Mockito.when(bookService.update(updatedBook)).thenReturn(null);
+        Mockito.when(bookService.update(updatedBook, null)).thenReturn(null);
 
         mockMvc.perform(MockMvcRequestBuilders.put("/books/")
                         .contentType(MediaType.APPLICATION_JSON)
@@ -248,9 +747,37 @@ public class BookControllerTest {
                 .andExpect(status().isNotFound());
     }
 
+    @Test
+    public void givenName_whenPatchExistingId_thenOnlyNameChanges() throws Exception {
+        BookDto changes = BookDto.builder()
+                .name("Peter Pan")
+                .build();
+        BookDto patchedBook = new BookDto(BOOK3.getId(), "Peter Pan", BOOK3.getIsbn(), 1L);
+
+        Mockito.when(bookService.patch(BOOK3.getId(), changes, null)).thenReturn(patchedBook);
+
+        mockMvc.perform(MockMvcRequestBuilders.patch("/books/" + BOOK3.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Peter Pan\"}"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"1\""))
+                .andExpect(jsonPath("$.name", is("Peter Pan")))
+                .andExpect(jsonPath("$.isbn", is(BOOK3.getIsbn())));
+    }
+
+    @Test
+    public void givenName_whenPatchNonExistingId_thenNotFound() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.patch("/books/11")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Peter Pan\"}"))
+                .andExpect(status().isNotFound());
+    }
+
     @Test
     public void givenExistingId_whenDelete_thenSuccess() throws Exception {
-        Mockito.when(bookService.getById(BOOK1.getId())).thenReturn(BOOK1);
+        Mockito.when(bookService.deleteById(BOOK1.getId())).thenReturn(true);
 
         mockMvc.perform(MockMvcRequestBuilders.delete("/books/" + BOOK1.getId())
                         .contentType(MediaType.APPLICATION_JSON))
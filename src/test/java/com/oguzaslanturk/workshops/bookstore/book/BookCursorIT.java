@@ -0,0 +1,79 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Pages through books with string and ObjectId ids, as the sample books and everything created later have.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@Testcontainers
+public class BookCursorIT {
+
+    @Container
+    private static final MongoDBContainer MONGO = new MongoDBContainer(DockerImageName.parse("mongo:4.4"));
+
+    @DynamicPropertySource
+    static void mongoProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.data.mongodb.host", MONGO::getHost);
+        registry.add("spring.data.mongodb.port", () -> MONGO.getMappedPort(27017));
+        registry.add("spring.data.mongodb.database", () -> "bookstore");
+        registry.add("bookstore.change-stream.enabled", () -> "false");
+    }
+
+    @Autowired
+    private BookService bookService;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @BeforeEach
+    public void setUp() {
+        bookRepository.deleteAll();
+        bookRepository.save(new Book("1", "The Little Prince", "9786059681001"));
+        bookRepository.save(new Book("2", "Animal Farm", "9786257678322"));
+        bookService.save(BookDto.builder().name("Peter Pan").isbn("9786059489836").build());
+        bookService.save(BookDto.builder().name("Dune").isbn("9786059681117").build());
+    }
+
+    @Test
+    public void givenStringAndObjectIds_whenPagingById_thenEveryBookIsReadInBothDirections() {
+        final List<String> ascending = pageThrough(Sort.Direction.ASC);
+        final List<String> descending = pageThrough(Sort.Direction.DESC);
+
+        assertEquals(4, ascending.size());
+        assertEquals(List.of("1", "2"), ascending.subList(0, 2));
+        final List<String> reversed = new ArrayList<>(descending);
+        Collections.reverse(reversed);
+        assertEquals(ascending, reversed);
+    }
+
+    private List<String> pageThrough(Sort.Direction direction) {
+        final List<String> ids = new ArrayList<>();
+        String cursor = null;
+        do {
+            final BookCursorPageDto page = bookService.getAllByCursor(new BookDto(), new BookSearchOptions(), cursor,
+                    PageRequest.of(0, 1, Sort.by(direction, "id")));
+            ids.addAll(page.getBooks().stream().map(BookDto::getId).collect(Collectors.toList()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return ids;
+    }
+}
@@ -0,0 +1,125 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import org.bson.BsonObjectId;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import javax.validation.Validation;
+import java.io.StringReader;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+
+public class BookImportServiceImplTest {
+
+    private final MongoTemplate mongoTemplate = Mockito.mock(MongoTemplate.class);
+
+    private final BulkOperations bulk = Mockito.mock(BulkOperations.class, Mockito.RETURNS_SELF);
+
+    private final BookIsbnIndex isbnIndex = Mockito.mock(BookIsbnIndex.class);
+
+    private final BookImportServiceImpl importService = new BookImportServiceImpl(mongoTemplate,
+            new ObjectMapper(),
+            Validation.buildDefaultValidatorFactory().getValidator(),
+            new BookCountCache(Duration.ofSeconds(60), 100),
+            isbnIndex,
+            1000,
+            1000,
+            3,
+            1000);
+
+    @BeforeEach
+    public void setUp() {
+        Mockito.when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Book.class)).thenReturn(bulk);
+        Mockito.when(bulk.execute())
+                .thenReturn(BulkWriteResult.acknowledged(1, 0, 0, 0, Collections.emptyList(), Collections.emptyList()));
+    }
+
+    @Test
+    public void givenBlankNames_whenImport_thenRejected() throws Exception {
+        BookImportResultDto result = importService.importBooks(new StringReader(
+                "{\"name\":\"Peter Pan\"}\n{\"name\":\" \",\"isbn\":\"9786059489836\"}\n{\"isbn\":\"9786059681001\"}\n"),
+                BookDataFormat.NDJSON);
+
+        assertThat(result.getRecords(), is(3L));
+        assertThat(result.getRejected(), is(2L));
+        assertThat(result.getRejections().get(0).getLine(), is(2L));
+        assertThat(result.getRejections().get(0).getErrors(), contains("name: must not be blank"));
+        assertThat(result.getRejections().get(1).getLine(), is(3L));
+        Mockito.verify(bulk).insert(any(Book.class));
+        Mockito.verify(bulk, Mockito.never()).upsert(any(Query.class), any(Update.class));
+    }
+
+    @Test
+    public void givenQuotedLineBreaks_whenImportCsv_thenRecordsReadAcrossLines() throws Exception {
+        final String exported = String.join("\n",
+                BookCsv.formatLine(List.of(BookCsv.NAME, BookCsv.ISBN)),
+                BookCsv.formatLine(List.of("Peter Pan\nand Wendy", "9786059489836")),
+                BookCsv.formatLine(List.of("Animal Farm", "9786257678322")),
+                "");
+
+        BookImportResultDto result = importService.importBooks(new StringReader(exported), BookDataFormat.CSV);
+
+        assertThat(result.getRecords(), is(2L));
+        assertThat(result.getRejected(), is(0L));
+        final ArgumentCaptor<Update> updates = ArgumentCaptor.forClass(Update.class);
+        Mockito.verify(bulk, Mockito.times(2)).upsert(any(Query.class), updates.capture());
+        assertThat(updates.getAllValues().get(0).getUpdateObject().get("$set", Document.class).get("name"),
+                is("Peter Pan\nand Wendy"));
+        Mockito.verify(bulk).upsert(eq(Query.query(Criteria.where("isbn").is("9786257678322"))), any(Update.class));
+    }
+
+    @Test
+    public void givenStrayQuote_whenImportCsv_thenRecordRejectedAtLineCapAndReadingResumes() throws Exception {
+        final String upload = String.join("\n",
+                "\"Peter Pan,9786059489836",
+                "Animal Farm,9786257678322",
+                "Nineteen Eighty-Four,9786059681001",
+                "Brave New World,9786059681100",
+                "Dune,9786059681117",
+                "");
+
+        BookImportResultDto result = importService.importBooks(new StringReader(upload), BookDataFormat.CSV);
+
+        assertThat(result.getRecords(), is(3L));
+        assertThat(result.getRejected(), is(1L));
+        assertThat(result.getRejections().get(0).getLine(), is(1L));
+        assertThat(result.getRejections().get(0).getErrors(), contains("Record spans more than 3 lines"));
+        Mockito.verify(bulk, Mockito.times(2)).upsert(any(Query.class), any(Update.class));
+        Mockito.verify(bulk).upsert(eq(Query.query(Criteria.where("isbn").is("9786059681117"))), any(Update.class));
+    }
+
+    @Test
+    public void givenNewIsbns_whenImport_thenUpsertedBooksAreIndexed() throws Exception {
+        final ObjectId upserted = new ObjectId();
+        Mockito.when(bulk.execute()).thenReturn(BulkWriteResult.acknowledged(0, 1, 0, 1,
+                Collections.singletonList(new BulkWriteUpsert(1, new BsonObjectId(upserted))),
+                Collections.emptyList()));
+
+        importService.importBooks(new StringReader(
+                "{\"name\":\"Peter Pan\",\"isbn\":\"9786059489836\"}\n"
+                        + "{\"name\":\"Animal Farm\",\"isbn\":\"9786257678322\"}\n"),
+                BookDataFormat.NDJSON);
+
+        Mockito.verify(isbnIndex).put("9786257678322", upserted.toHexString());
+        Mockito.verifyNoMoreInteractions(isbnIndex);
+    }
+}
@@ -0,0 +1,91 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+import com.oguzaslanturk.workshops.bookstore.exception.InvalidQueryException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class BookQueryPlannerTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final BookQueryPlanner planner = new BookQueryPlanner(100, 10000, meterRegistry);
+
+    @Test
+    public void givenUnsorted_whenPlanSort_thenOrderedByIdWithoutCountingARewrite() {
+        assertThat(planner.planSort(Sort.unsorted()), is(Sort.by("id")));
+        assertThat(meterRegistry.find(BookQueryPlanner.PLAN_COUNTER).counters(), is(empty()));
+    }
+
+    @Test
+    public void givenSortByName_whenPlanSort_thenIdTiebreakerInSameDirection() {
+        assertThat(planner.planSort(Sort.by(Sort.Direction.DESC, "name")),
+                is(Sort.by(Sort.Direction.DESC, "name", "id")));
+        assertThat(rewrites("tiebreaker"), is(1.0));
+    }
+
+    @Test
+    public void givenSortByIsbn_whenPlanSort_thenIdTiebreakerInSameDirection() {
+        assertThat(planner.planSort(Sort.by("isbn")), is(Sort.by("isbn", "id")));
+        assertThat(planner.planSort(Sort.by(Sort.Direction.DESC, "isbn", "id")),
+                is(Sort.by(Sort.Direction.DESC, "isbn", "id")));
+        assertThat(rewrites("tiebreaker"), is(1.0));
+    }
+
+    @Test
+    public void givenSortById_whenPlanSort_thenUnchanged() {
+        assertThat(planner.planSort(Sort.by(Sort.Direction.DESC, "id")), is(Sort.by(Sort.Direction.DESC, "id")));
+        assertThat(meterRegistry.find(BookQueryPlanner.PLAN_COUNTER).counters(), is(empty()));
+    }
+
+    @Test
+    public void givenSortByNameAndId_whenPlanSort_thenUnchanged() {
+        assertThat(planner.planSort(Sort.by("name", "id")), is(Sort.by("name", "id")));
+    }
+
+    @Test
+    public void givenSortWithoutIndex_whenPlanSort_thenRejected() {
+        assertThrows(InvalidQueryException.class, () -> planner.planSort(Sort.by("version")));
+        assertThrows(InvalidQueryException.class, () -> planner.planSort(Sort.by(Sort.Order.by("name").ignoreCase())));
+        assertThrows(InvalidQueryException.class, () -> planner.planSort(Sort.by("id", "name")));
+        assertThrows(InvalidQueryException.class, () -> planner.planSort(Sort.by("name", "isbn")));
+        assertThrows(InvalidQueryException.class,
+                () -> planner.planSort(Sort.by(Sort.Order.asc("name"), Sort.Order.desc("id"))));
+        assertThat(meterRegistry.counter(BookQueryPlanner.PLAN_COUNTER, "action", "rejected", "reason", "sort").count(),
+                is(5.0));
+    }
+
+    @Test
+    public void givenLargePage_whenPlan_thenPageSizeCapped() {
+        Pageable planned = planner.plan(PageRequest.of(2, 500, Sort.by("id")));
+
+        assertThat(planned, is(PageRequest.of(2, 100, Sort.by("id"))));
+        assertThat(rewrites("page_size"), is(1.0));
+    }
+
+    @Test
+    public void givenUnpaged_whenPlan_thenFirstPageOfMaxSize() {
+        assertThat(planner.plan(Pageable.unpaged()), is(PageRequest.of(0, 100, Sort.by("id"))));
+        assertThat(rewrites("unpaged"), is(1.0));
+    }
+
+    @Test
+    public void givenOffsetBeyondLimit_whenPlan_thenRejected() {
+        assertThat(planner.plan(PageRequest.of(100, 100)).getOffset(), is(10000L));
+        assertThrows(InvalidQueryException.class, () -> planner.plan(PageRequest.of(101, 100)));
+        assertThat(meterRegistry.counter(BookQueryPlanner.PLAN_COUNTER, "action", "rejected", "reason", "offset").count(),
+                is(1.0));
+    }
+
+    private double rewrites(String reason) {
+        return meterRegistry.counter(BookQueryPlanner.PLAN_COUNTER, "action", "rewritten", "reason", reason).count();
+    }
+}
@@ -0,0 +1,122 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Checks the read preference sent with each book query against a single node replica set in a container,
+ * which accepts secondary reads by serving them from the primary.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@Testcontainers
+public class BookReadRoutingIT {
+
+    @Container
+    private static final MongoDBContainer MONGO = new MongoDBContainer(DockerImageName.parse("mongo:4.4"));
+
+    private static final String READ_PREFERENCE = "$readPreference";
+
+    @DynamicPropertySource
+    static void mongoProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.data.mongodb.host", MONGO::getHost);
+        registry.add("spring.data.mongodb.port", () -> MONGO.getMappedPort(27017));
+        registry.add("spring.data.mongodb.database", () -> "bookstore");
+        registry.add("bookstore.change-stream.consumer", () -> "read-routing-it");
+        registry.add("bookstore.read-routing.max-staleness", () -> "120s");
+    }
+
+    @TestConfiguration
+    static class BookFindCommands implements CommandListener {
+        private final List<BsonDocument> commands = new CopyOnWriteArrayList<>();
+
+        @Bean
+        public MongoClientSettingsBuilderCustomizer bookFindCommandsCustomizer() {
+            return settings -> settings.addCommandListener(this);
+        }
+
+        @Override
+        public void commandStarted(CommandStartedEvent event) {
+            if ("find".equals(event.getCommandName()) && "books".equals(event.getCommand().getString("find").getValue())) {
+                commands.add(event.getCommand().clone());
+            }
+        }
+    }
+
+    @Autowired
+    private BookFindCommands bookFindCommands;
+
+    @Autowired
+    private BookService bookService;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @BeforeEach
+    public void setUp() {
+        bookFindCommands.commands.clear();
+    }
+
+    @Test
+    public void givenListQuery_whenGetAll_thenReadsFromSecondaryPreferredWithMaxStaleness() {
+        bookService.getAll(new BookDto(), BookSearchOptions.builder().count(CountMode.NONE).build(), PageRequest.of(0, 20));
+
+        final BsonDocument readPreference = lastFind().getDocument(READ_PREFERENCE);
+        assertEquals("secondaryPreferred", readPreference.getString("mode").getValue());
+        assertEquals(120, readPreference.getNumber("maxStalenessSeconds").intValue());
+    }
+
+    @Test
+    public void givenExport_whenStreaming_thenReadsFromSecondaryPreferred() throws Exception {
+        bookService.exportAll(new BookDto(), new BookSearchOptions(), Sort.by("name"), BookDataFormat.NDJSON,
+                new ByteArrayOutputStream());
+
+        assertEquals("secondaryPreferred", lastFind().getDocument(READ_PREFERENCE).getString("mode").getValue());
+    }
+
+    @Test
+    public void givenWrite_whenGetById_thenReadsOwnWriteFromPrimary() {
+        final BookDto saved = bookService.save(new BookDto(null, "Peter Pan", "9786059489867"));
+        cacheManager.getCache(BookServiceImpl.BOOKS_CACHE).clear();
+
+        assertNotNull(bookService.getById(saved.getId()));
+        final BsonDocument command = lastFind();
+        if (command.containsKey(READ_PREFERENCE)) {
+            // a direct connection turns the primary read preference into primaryPreferred
+            assertNotEquals("secondaryPreferred", command.getDocument(READ_PREFERENCE).getString("mode").getValue());
+        }
+    }
+
+    private BsonDocument lastFind() {
+        final List<BsonDocument> commands = bookFindCommands.commands;
+        if (commands.isEmpty()) {
+            return fail("No find on the books collection was sent");
+        }
+        return commands.get(commands.size() - 1);
+    }
+}
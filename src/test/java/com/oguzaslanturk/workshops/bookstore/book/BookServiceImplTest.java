@@ -0,0 +1,242 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonType;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.cache.support.NoOpCacheManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+
+public class BookServiceImplTest {
+
+    private static final int PAGE_SIZE = 20;
+
+    private final MongoTemplate mongoTemplate = Mockito.mock(MongoTemplate.class, Mockito.RETURNS_DEEP_STUBS);
+
+    private final MongoTemplate listMongoTemplate = Mockito.mock(MongoTemplate.class, Mockito.RETURNS_DEEP_STUBS);
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final BookRepository bookRepository = Mockito.mock(BookRepository.class);
+
+    private final BookIsbnIndex isbnIndex = Mockito.mock(BookIsbnIndex.class);
+
+    private BookServiceImpl bookService;
+
+    @BeforeEach
+    public void setUp() {
+        bookService = newBookService(Optional.empty());
+        Mockito.when(listMongoTemplate.count(any(Query.class), eq(Book.class))).thenReturn(1000L);
+        Mockito.when(listMongoTemplate.estimatedCount(Book.class)).thenReturn(1200L);
+        Mockito.when(mongoTemplate.count(any(Query.class), eq(Book.class))).thenReturn(1001L);
+    }
+
+    @Test
+    public void givenExactCountAndFullPage_whenGetAll_thenCountedOnListTemplate() {
+        givenPageOf(PAGE_SIZE);
+
+        BookPageDto page = bookService.getAll(nameFilter(), options(CountMode.EXACT), PageRequest.of(0, PAGE_SIZE));
+
+        assertThat(page.getTotalItems(), is(1000L));
+        assertThat(page.isTotalExact(), is(true));
+        Mockito.verify(listMongoTemplate).count(any(Query.class), eq(Book.class));
+    }
+
+    @Test
+    public void givenPageNotFull_whenGetAll_thenTotalFromPageWithoutCount() {
+        givenPageOf(5);
+
+        BookPageDto page = bookService.getAll(nameFilter(), options(CountMode.EXACT), PageRequest.of(0, PAGE_SIZE));
+
+        assertThat(page.getTotalItems(), is(5L));
+        assertThat(page.isTotalExact(), is(true));
+        Mockito.verify(listMongoTemplate, Mockito.never()).count(any(Query.class), eq(Book.class));
+    }
+
+    @Test
+    public void givenNoCount_whenGetAll_thenLowerBoundFromPage() {
+        givenPageOf(PAGE_SIZE);
+
+        BookPageDto page = bookService.getAll(nameFilter(), options(CountMode.NONE), PageRequest.of(2, PAGE_SIZE));
+
+        assertThat(page.getTotalItems(), is(60L));
+        assertThat(page.isTotalExact(), is(false));
+        Mockito.verify(listMongoTemplate, Mockito.never()).count(any(Query.class), eq(Book.class));
+    }
+
+    @Test
+    public void givenEstimatedCountWithoutFilter_whenGetAll_thenCollectionMetadataCount() {
+        givenPageOf(PAGE_SIZE);
+
+        BookPageDto page = bookService.getAll(new BookDto(), options(CountMode.ESTIMATED), PageRequest.of(0, PAGE_SIZE));
+
+        assertThat(page.getTotalItems(), is(1200L));
+        assertThat(page.isTotalExact(), is(false));
+        Mockito.verify(listMongoTemplate, Mockito.never()).count(any(Query.class), eq(Book.class));
+    }
+
+    @Test
+    public void givenEstimatedCountWithFilter_whenGetAll_thenCountedExactly() {
+        givenPageOf(PAGE_SIZE);
+
+        BookPageDto page = bookService.getAll(nameFilter(), options(CountMode.ESTIMATED), PageRequest.of(0, PAGE_SIZE));
+
+        assertThat(page.getTotalItems(), is(1000L));
+        assertThat(page.isTotalExact(), is(true));
+        Mockito.verify(listMongoTemplate, Mockito.never()).estimatedCount(Book.class);
+    }
+
+    @Test
+    public void givenCachedCount_whenGetAllAgain_thenCountedOnPrimaryOnceUntilExpired() {
+        givenPageOf(PAGE_SIZE);
+
+        BookPageDto first = bookService.getAll(nameFilter(), options(CountMode.CACHED), PageRequest.of(0, PAGE_SIZE));
+        BookPageDto second = bookService.getAll(nameFilter(), options(CountMode.CACHED), PageRequest.of(1, PAGE_SIZE));
+
+        assertThat(first.getTotalItems(), is(1001L));
+        assertThat(first.isTotalExact(), is(true));
+        assertThat(second.getTotalItems(), is(1001L));
+        assertThat(second.isTotalExact(), is(false));
+        Mockito.verify(mongoTemplate).count(any(Query.class), eq(Book.class));
+        Mockito.verify(listMongoTemplate, Mockito.never()).count(any(Query.class), eq(Book.class));
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(61));
+        bookService.getAll(nameFilter(), options(CountMode.CACHED), PageRequest.of(0, PAGE_SIZE));
+
+        Mockito.verify(mongoTemplate, Mockito.times(2)).count(any(Query.class), eq(Book.class));
+    }
+
+    @Test
+    public void givenCachedCountOfAnotherFilter_whenGetAll_thenCountedAgain() {
+        givenPageOf(PAGE_SIZE);
+        bookService.getAll(nameFilter(), options(CountMode.CACHED), PageRequest.of(0, PAGE_SIZE));
+
+        bookService.getAll(BookDto.builder().name("Animal").build(), options(CountMode.CACHED), PageRequest.of(0, PAGE_SIZE));
+
+        Mockito.verify(mongoTemplate, Mockito.times(2)).count(any(Query.class), eq(Book.class));
+    }
+
+    @Test
+    public void givenCountExecutorAndIsbnFilter_whenGetAll_thenNoParallelCount() {
+        final ExecutorService countExecutor = Mockito.mock(ExecutorService.class);
+        bookService = newBookService(Optional.of(countExecutor));
+        givenPageOf(1);
+
+        BookPageDto page = bookService.getAll(BookDto.builder().isbn("9786059681001").build(),
+                options(CountMode.EXACT), PageRequest.of(0, PAGE_SIZE));
+
+        assertThat(page.getTotalItems(), is(1L));
+        Mockito.verifyNoInteractions(countExecutor);
+        Mockito.verify(listMongoTemplate, Mockito.never()).count(any(Query.class), eq(Book.class));
+    }
+
+    @Test
+    public void givenIsbnInIndex_whenGetAll_thenAnsweredWithoutQueryAndTimedByShape() {
+        final Book book = new Book();
+        book.setId("1");
+        book.setIsbn("9786059489836");
+        Mockito.when(isbnIndex.findId("9786059489836")).thenReturn("1");
+        Mockito.when(bookRepository.findAllById(List.of("1"))).thenReturn(List.of(book));
+
+        BookPageDto page = bookService.getAll(BookDto.builder().isbn("9786059489836").build(),
+                options(CountMode.EXACT), PageRequest.of(0, PAGE_SIZE));
+
+        assertThat(page.getTotalItems(), is(1L));
+        assertThat(page.getBooks().get(0).getId(), is("1"));
+        Mockito.verifyNoInteractions(listMongoTemplate);
+        assertThat(meterRegistry.timer(BookServiceImpl.QUERY_TIMER, "shape", "isbn").count(), is(1L));
+    }
+
+    @Test
+    public void givenCursorEndingOnStringId_whenGetAllByCursor_thenObjectIdsStillFollow() {
+        final String cursor = new BookCursor("id", Sort.Direction.ASC, "2", null).encode();
+
+        bookService.getAllByCursor(new BookDto(), new BookSearchOptions(), cursor, PageRequest.of(0, 1));
+
+        final ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        Mockito.verify(listMongoTemplate).find(query.capture(), eq(Book.class));
+        assertThat(query.getValue().getQueryObject(), is(new Document("$or", List.of(
+                new Document("_id", new Document("$gt", "2")),
+                new Document("_id", new Document("$type", BsonType.OBJECT_ID.getValue()))))));
+    }
+
+    @Test
+    public void givenDescendingCursorEndingOnObjectId_whenGetAllByCursor_thenStringIdsStillFollow() {
+        final ObjectId last = new ObjectId();
+        final String cursor = new BookCursor("id", Sort.Direction.DESC, last.toHexString(), null).encode();
+
+        bookService.getAllByCursor(new BookDto(), new BookSearchOptions(), cursor,
+                PageRequest.of(0, 1, Sort.by(Sort.Direction.DESC, "id")));
+
+        final ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        Mockito.verify(listMongoTemplate).find(query.capture(), eq(Book.class));
+        assertThat(query.getValue().getQueryObject(), is(new Document("$or", List.of(
+                new Document("_id", new Document("$lt", last)),
+                new Document("_id", new Document("$type", BsonType.STRING.getValue()))))));
+    }
+
+    @Test
+    public void givenCursorEndingOnObjectId_whenGetAllByCursor_thenOnlyLaterObjectIds() {
+        final ObjectId last = new ObjectId();
+        final String cursor = new BookCursor("id", Sort.Direction.ASC, last.toHexString(), null).encode();
+
+        bookService.getAllByCursor(new BookDto(), new BookSearchOptions(), cursor, PageRequest.of(0, 1));
+
+        final ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        Mockito.verify(listMongoTemplate).find(query.capture(), eq(Book.class));
+        assertThat(query.getValue().getQueryObject(), is(new Document("_id", new Document("$gt", last))));
+    }
+
+    private BookServiceImpl newBookService(Optional<ExecutorService> countExecutor) {
+        return new BookServiceImpl(bookRepository,
+                mongoTemplate,
+                listMongoTemplate,
+                new BookCountCache(Duration.ofSeconds(60), 1000, nanos::get),
+                new ObjectMapper(),
+                countExecutor,
+                meterRegistry,
+                new BookQueryPlanner(100, 10_000, meterRegistry),
+                new NoOpCacheManager(),
+                isbnIndex);
+    }
+
+    private void givenPageOf(int books) {
+        final List<BookDto> page = IntStream.range(0, books)
+                .mapToObj(i -> new BookDto(String.valueOf(i), "Book number " + i, null))
+                .collect(Collectors.toList());
+        Mockito.when(listMongoTemplate.query(Book.class).as(BookDto.class).matching(any(Query.class)).all())
+                .thenReturn(page);
+    }
+
+    private static BookDto nameFilter() {
+        return BookDto.builder().name("Book").build();
+    }
+
+    private static BookSearchOptions options(CountMode countMode) {
+        return BookSearchOptions.builder().count(countMode).build();
+    }
+}
@@ -0,0 +1,137 @@
+package com.oguzaslanturk.workshops.bookstore.book;
+
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+
+public class IsbnIdTableTest {
+
+    private static final int CAPACITY = 16;
+
+    private static final long ISBN_13 = IsbnIdTable.pack("9786059489836");
+
+    @Test
+    public void givenIsbns_whenPack_thenBothFormsAreDistinctAndOthersNotPackable() {
+        assertThat(ISBN_13, is(9786059489836L));
+        assertThat(IsbnIdTable.pack("605948983X"), not(IsbnIdTable.pack("6059489830")));
+        assertThat(IsbnIdTable.pack("6059489836"), not(IsbnIdTable.pack("0006059489836")));
+        assertThat(IsbnIdTable.pack("978-6059489836"), is(IsbnIdTable.NOT_PACKABLE));
+        assertThat(IsbnIdTable.pack("97860594898X6"), is(IsbnIdTable.NOT_PACKABLE));
+        assertThat(IsbnIdTable.pack("0000000000000"), is(IsbnIdTable.NOT_PACKABLE));
+        assertThat(IsbnIdTable.pack(null), is(IsbnIdTable.NOT_PACKABLE));
+    }
+
+    @Test
+    public void givenEntry_whenPutAgain_thenIdIsReplaced() {
+        final IsbnIdTable table = new IsbnIdTable(0);
+        final String first = new ObjectId().toHexString();
+        final String second = new ObjectId().toHexString();
+
+        table.put(ISBN_13, first);
+        assertThat(table.get(ISBN_13), is(first));
+        table.put(ISBN_13, second);
+
+        assertThat(table.get(ISBN_13), is(second));
+        assertThat(table.size(), is(1));
+    }
+
+    @Test
+    public void givenOtherId_whenRemove_thenEntryIsKept() {
+        final IsbnIdTable table = new IsbnIdTable(0);
+        final String id = new ObjectId().toHexString();
+        table.put(ISBN_13, id);
+
+        table.remove(ISBN_13, new ObjectId().toHexString());
+        assertThat(table.get(ISBN_13), is(id));
+
+        table.remove(ISBN_13, id);
+        assertThat(table.get(ISBN_13), nullValue());
+        assertThat(table.size(), is(0));
+    }
+
+    @Test
+    public void givenIdNotAnObjectId_whenPut_thenKeptInOverflow() {
+        final IsbnIdTable table = new IsbnIdTable(0);
+        table.put(ISBN_13, new ObjectId().toHexString());
+
+        table.put(ISBN_13, "it-1");
+
+        assertThat(table.get(ISBN_13), is("it-1"));
+        assertThat(table.size(), is(1));
+        table.remove(ISBN_13, "it-1");
+        assertThat(table.get(ISBN_13), nullValue());
+        assertThat(table.size(), is(0));
+    }
+
+    @Test
+    public void givenMoreEntriesThanTheLoadAllows_whenPut_thenResizedWithAllEntries() {
+        final IsbnIdTable table = new IsbnIdTable(0);
+        final long initialFootprint = table.footprintBytes();
+        final Map<Long, String> entries = new LinkedHashMap<>();
+        for (long key = 9780000000000L; entries.size() < 100; key++) {
+            entries.put(key, new ObjectId().toHexString());
+            table.put(key, entries.get(key));
+        }
+
+        assertThat(table.size(), is(100));
+        assertThat(table.footprintBytes() > initialFootprint, is(true));
+        entries.forEach((key, id) -> assertThat(table.get(key), is(id)));
+    }
+
+    @Test
+    public void givenCapacityEnsuredForTheEntries_whenPut_thenNotResized() {
+        final IsbnIdTable table = new IsbnIdTable(0);
+        table.ensureCapacity(1000);
+        final long sizedFootprint = table.footprintBytes();
+
+        for (long key = 9780000000000L; table.size() < 1000; key++) {
+            table.put(key, new ObjectId().toHexString());
+        }
+
+        assertThat(table.footprintBytes(), is(sizedFootprint));
+        assertThat(sizedFootprint, is(1250L * 20));
+        table.ensureCapacity(10);
+        assertThat(table.footprintBytes(), is(sizedFootprint));
+    }
+
+    @Test
+    public void givenProbeSequenceWrappingAroundTheEnd_whenRemove_thenFollowingEntriesShiftBack() {
+        final IsbnIdTable table = new IsbnIdTable(0);
+        // three keys homed in the last slot take it and wrap around into slots 0 and 1, followed by a key homed in 0
+        final List<Long> keys = new ArrayList<>(keysWithHome(CAPACITY - 1, 3));
+        keys.addAll(keysWithHome(0, 1));
+        final Map<Long, String> entries = new LinkedHashMap<>();
+        for (long key : keys) {
+            entries.put(key, new ObjectId().toHexString());
+            table.put(key, entries.get(key));
+        }
+
+        table.remove(keys.get(0), entries.remove(keys.get(0)));
+        entries.forEach((key, id) -> assertThat(table.get(key), is(id)));
+
+        table.remove(keys.get(2), entries.remove(keys.get(2)));
+        entries.forEach((key, id) -> assertThat(table.get(key), is(id)));
+        assertThat(table.get(keys.get(0)), nullValue());
+        assertThat(table.get(keys.get(2)), nullValue());
+        assertThat(table.size(), is(2));
+    }
+
+    private static List<Long> keysWithHome(int slot, int count) {
+        final List<Long> keys = new ArrayList<>();
+        for (long key = 9780000000000L; keys.size() < count; key++) {
+            if (IsbnIdTable.home(key, CAPACITY) == slot) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,108 @@
+package com.oguzaslanturk.workshops.bookstore.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class AdaptiveConcurrencyLimitTest {
+
+    private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long WINDOW = 100 * MILLI;
+
+    private final AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(10, 100, 2.0);
+
+    private long now = System.nanoTime();
+
+    @Test
+    public void givenFullLimit_whenAcquire_thenExpensiveRequestsKeepAQuarterFree() {
+        for (int i = 0; i < 75; i++) {
+            assertThat(limit.tryAcquire(true), is(true));
+        }
+        assertThat(limit.tryAcquire(true), is(false));
+        for (int i = 0; i < 25; i++) {
+            assertThat(limit.tryAcquire(false), is(true));
+        }
+        assertThat(limit.tryAcquire(false), is(false));
+
+        limit.release();
+        assertThat(limit.getInFlight(), is(99));
+        assertThat(limit.tryAcquire(false), is(true));
+    }
+
+    @Test
+    public void givenFindLatencyAboveTolerance_whenWindowEnds_thenLimitShrinksByATenth() {
+        window("find", MILLI);
+        assertThat(limit.getLimit(), is(100));
+
+        window("find", 3 * MILLI);
+        assertThat(limit.getLimit(), is(90));
+        window("find", 3 * MILLI);
+        assertThat(limit.getLimit(), is(81));
+    }
+
+    @Test
+    public void givenFindLatencyBackToBaseline_whenWindowEnds_thenLimitGrowsByOne() {
+        window("find", MILLI);
+        window("find", 3 * MILLI);
+        assertThat(limit.getLimit(), is(90));
+
+        window("find", MILLI);
+        assertThat(limit.getLimit(), is(91));
+    }
+
+    @Test
+    public void givenSustainedCongestion_whenWindowsEnd_thenLimitStopsAtMinimum() {
+        window("find", MILLI);
+        for (int i = 0; i < 50; i++) {
+            window("find", 100 * MILLI);
+        }
+        assertThat(limit.getLimit(), is(10));
+    }
+
+    @Test
+    public void givenSlowBulkWrites_whenWindowEnds_thenLimitUnchanged() {
+        window("find", MILLI);
+        window("find", MILLI);
+        limit.record("insert", 500 * MILLI);
+        limit.record("update", 500 * MILLI);
+        window("find", MILLI);
+
+        assertThat(limit.getLimit(), is(100));
+    }
+
+    @Test
+    public void givenFastIdLookupsBesideSlowerScans_whenWindowsEnd_thenEachKeepsItsOwnBaseline() {
+        window("find", MILLI);
+        limit.record("count", 20 * MILLI);
+        window("find", MILLI);
+        assertThat(limit.getLimit(), is(100));
+
+        // counts settle at their own baseline, 20 times that of the finds
+        limit.record("count", 20 * MILLI);
+        window("find", MILLI);
+        assertThat(limit.getLimit(), is(100));
+
+        limit.record("count", 50 * MILLI);
+        window("find", MILLI);
+        assertThat(limit.getLimit(), is(90));
+    }
+
+    @Test
+    public void givenNoCommands_whenWindowEnds_thenLimitUnchanged() {
+        window("find", MILLI);
+        window("find", 3 * MILLI);
+        now += WINDOW;
+        limit.adjustIfDue(now);
+
+        assertThat(limit.getLimit(), is(90));
+    }
+
+    private void window(String commandName, long latencyNanos) {
+        limit.record(commandName, latencyNanos);
+        now += WINDOW;
+        limit.adjustIfDue(now);
+    }
+}
@@ -0,0 +1,213 @@
+package com.oguzaslanturk.workshops.bookstore.config;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.mongodb.client.AggregateIterable;
+import com.mongodb.client.MongoCollection;
+import com.oguzaslanturk.workshops.bookstore.book.Book;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+
+public class BookIndexReconcilerTest {
+
+    private static final Document ID_INDEX = index("_id_", new Document("_id", 1));
+    private static final Document NAME_INDEX = index("name_id", new Document("name", 1).append("_id", 1));
+    private static final Document NORMALIZED_NAME_INDEX =
+            index("normalizedName_id", new Document("normalizedName", 1).append("_id", 1));
+    private static final Document ISBN_ID_INDEX = index("isbn_id", new Document("isbn", 1).append("_id", 1));
+    private static final Document ISBN_INDEX =
+            index("isbn_unique", new Document("isbn", 1)).append("unique", true).append("sparse", true);
+    private static final Document TEXT_INDEX = index("Book_TextIndex", new Document("_fts", "text").append("_ftsx", 1))
+            .append("weights", new Document("name", 1));
+
+    private final MongoTemplate mongoTemplate = Mockito.mock(MongoTemplate.class);
+
+    private final IndexOperations indexOperations = Mockito.mock(IndexOperations.class);
+
+    private final List<Document> indexStats = new ArrayList<>();
+
+    private final ListAppender<ILoggingEvent> logged = new ListAppender<>();
+
+    private final BookIndexReconciler reconciler = new BookIndexReconciler(mongoTemplate, true);
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        Mockito.when(mongoTemplate.indexOps(Book.class)).thenReturn(indexOperations);
+        Mockito.when(mongoTemplate.getConverter())
+                .thenReturn(new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, new MongoMappingContext()));
+        Mockito.when(mongoTemplate.getCollectionName(Book.class)).thenReturn("books");
+        final MongoCollection<Document> collection = Mockito.mock(MongoCollection.class);
+        final AggregateIterable<Document> stats = Mockito.mock(AggregateIterable.class);
+        Mockito.when(mongoTemplate.getCollection("books")).thenReturn(collection);
+        Mockito.when(collection.aggregate(anyList())).thenReturn(stats);
+        Mockito.doAnswer(invocation -> {
+            indexStats.forEach(invocation.<Consumer<Document>>getArgument(0));
+            return null;
+        }).when(stats).forEach(any());
+
+        logged.start();
+        ((Logger) LoggerFactory.getLogger(BookIndexReconciler.class)).addAppender(logged);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        ((Logger) LoggerFactory.getLogger(BookIndexReconciler.class)).detachAppender(logged);
+    }
+
+    @Test
+    public void givenDeclaredIndexesInPlace_whenReconcile_thenNothingBuiltOrReported() {
+        givenIndexes(ID_INDEX, NAME_INDEX, NORMALIZED_NAME_INDEX, ISBN_ID_INDEX, ISBN_INDEX, TEXT_INDEX);
+
+        reconciler.reconcile();
+
+        Mockito.verify(indexOperations, Mockito.never()).ensureIndex(any());
+        assertThat(warnings(), is(empty()));
+    }
+
+    @Test
+    public void givenMissingIndex_whenReconcile_thenOnlyItIsBuilt() {
+        givenIndexes(ID_INDEX, NAME_INDEX, NORMALIZED_NAME_INDEX, ISBN_ID_INDEX, TEXT_INDEX);
+
+        reconciler.reconcile();
+
+        assertThat(builtIndexes(), contains("isbn_unique"));
+        assertThat(warnings(), contains("Index isbn_unique of the books collection is missing, building it"));
+    }
+
+    @Test
+    public void givenIndexFailingToBuild_whenReconcile_thenOthersStillBuilt() {
+        givenIndexes(ID_INDEX);
+        Mockito.doThrow(new DuplicateKeyException("E11000 duplicate key error"))
+                .when(indexOperations)
+                .ensureIndex(Mockito.argThat(index -> "isbn_unique".equals(index.getIndexOptions().getString("name"))));
+
+        reconciler.reconcile();
+
+        assertThat(builtIndexes(), containsInAnyOrder("name_id", "normalizedName_id", "isbn_id", "Book_TextIndex",
+                "isbn_unique"));
+        assertThat(warnings(), hasItem("Building index isbn_unique of the books collection failed, "
+                + "queries relying on it will scan"));
+    }
+
+    @Test
+    public void givenIndexNotUniqueUnderDeclaredName_whenReconcile_thenMismatchReportedAndKept() {
+        givenIndexes(ID_INDEX, NAME_INDEX, NORMALIZED_NAME_INDEX, ISBN_ID_INDEX, TEXT_INDEX,
+                index("isbn_unique", new Document("isbn", 1)));
+
+        reconciler.reconcile();
+
+        Mockito.verify(indexOperations, Mockito.never()).ensureIndex(any());
+        assertThat(warnings(), contains("Index isbn_unique of the books collection is [isbn_1] unique false sparse false "
+                + "but declared as [isbn_1] unique true sparse true, drop it to have it rebuilt"));
+    }
+
+    @Test
+    public void givenIndexWithOtherKeysUnderDeclaredName_whenReconcile_thenMismatchReported() {
+        givenIndexes(ID_INDEX, NORMALIZED_NAME_INDEX, ISBN_ID_INDEX, ISBN_INDEX, TEXT_INDEX,
+                index("name_id", new Document("name", 1)));
+
+        reconciler.reconcile();
+
+        Mockito.verify(indexOperations, Mockito.never()).ensureIndex(any());
+        assertThat(warnings(), contains("Index name_id of the books collection is [name_1] unique false sparse false "
+                + "but declared as [name_1, _id_1] unique false sparse false, drop it to have it rebuilt"));
+    }
+
+    @Test
+    public void givenHandBuiltIsbnIndex_whenReconcile_thenReportedInsteadOfBuilt() {
+        givenIndexes(ID_INDEX, NAME_INDEX, NORMALIZED_NAME_INDEX, ISBN_ID_INDEX, TEXT_INDEX,
+                index("isbn_1", new Document("isbn", 1)));
+        indexStats.add(stats("isbn_1", 12));
+
+        reconciler.reconcile();
+
+        Mockito.verify(indexOperations, Mockito.never()).ensureIndex(any());
+        assertThat(warnings(), contains(
+                "Index isbn_1 of the books collection has the keys of index isbn_unique declared on the Book document",
+                "Index isbn_1 of the books collection is [isbn_1] unique false sparse false "
+                        + "but declared as [isbn_1] unique true sparse true, drop it to have it rebuilt",
+                "Index isbn_1 of the books collection is not declared on the Book document"));
+    }
+
+    @Test
+    public void givenUnusedIndexes_whenReconcile_thenOnlyThoseInPlaceBeforeAreReported() {
+        givenIndexes(ID_INDEX, NAME_INDEX, NORMALIZED_NAME_INDEX, ISBN_ID_INDEX, TEXT_INDEX);
+        indexStats.add(stats("_id_", 0));
+        indexStats.add(stats("name_id", 0));
+        indexStats.add(stats("normalizedName_id", 5));
+        indexStats.add(stats("isbn_unique", 0));
+
+        reconciler.reconcile();
+
+        assertThat(builtIndexes(), contains("isbn_unique"));
+        final List<String> warnings = warnings();
+        assertThat(warnings.size(), is(2));
+        assertThat(warnings.get(1), startsWith("Index name_id of the books collection has not been used since"));
+    }
+
+    private void givenIndexes(Document... indexes) {
+        final List<IndexInfo> infos = new ArrayList<>();
+        for (Document index : indexes) {
+            infos.add(IndexInfo.indexInfoOf(index));
+        }
+        Mockito.when(indexOperations.getIndexInfo()).thenReturn(infos);
+    }
+
+    private List<String> builtIndexes() {
+        final ArgumentCaptor<IndexDefinition> indexes = ArgumentCaptor.forClass(IndexDefinition.class);
+        Mockito.verify(indexOperations, Mockito.atLeast(0)).ensureIndex(indexes.capture());
+        return indexes.getAllValues()
+                .stream()
+                .map(index -> index.getIndexOptions().getString("name"))
+                .collect(Collectors.toList());
+    }
+
+    private List<String> warnings() {
+        return logged.list
+                .stream()
+                .filter(event -> event.getLevel().isGreaterOrEqual(Level.WARN))
+                .map(ILoggingEvent::getFormattedMessage)
+                .collect(Collectors.toList());
+    }
+
+    private static Document index(String name, Document keys) {
+        return new Document("v", 2).append("key", keys).append("name", name);
+    }
+
+    private static Document stats(String name, long ops) {
+        return new Document("name", name)
+                .append("accesses", new Document("ops", ops).append("since", new Date(0)));
+    }
+}
@@ -0,0 +1,63 @@
+package com.oguzaslanturk.workshops.bookstore.config;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.oguzaslanturk.workshops.bookstore.book.Book;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+
+public class CatalogueGeneratorTest {
+
+    private final MongoTemplate mongoTemplate = Mockito.mock(MongoTemplate.class);
+
+    @Test
+    public void givenBatchSizeOrThreadsBelowOne_whenCreated_thenRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new CatalogueGenerator(mongoTemplate, 10, 0, 4, 42));
+        assertThrows(IllegalArgumentException.class, () -> new CatalogueGenerator(mongoTemplate, 10, 5, 0, 42));
+    }
+
+    @Test
+    public void givenBooksStoredByEarlierRun_whenGenerate_thenDuplicateIdsSkipped() {
+        givenBulkInsertFailsWith(new BulkWriteError(11000, "E11000 duplicate key error collection: bookstore.books "
+                + "index: _id_ dup key: { _id: ObjectId('5eed00000000000000000001') }", new BsonDocument(), 1));
+
+        assertDoesNotThrow(() -> new CatalogueGenerator(mongoTemplate, 10, 10, 1, 42).generate());
+    }
+
+    @Test
+    public void givenIsbnTakenByAnotherBook_whenGenerate_thenGenerationFails() {
+        givenBulkInsertFailsWith(new BulkWriteError(11000, "E11000 duplicate key error collection: bookstore.books "
+                + "index: isbn_unique dup key: { isbn: \"9786059681001\" }", new BsonDocument(), 1));
+
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> new CatalogueGenerator(mongoTemplate, 10, 10, 1, 42).generate());
+        assertThat(e.getCause(), instanceOf(BulkOperationException.class));
+    }
+
+    private void givenBulkInsertFailsWith(BulkWriteError error) {
+        final BulkOperations bulk = Mockito.mock(BulkOperations.class, Mockito.RETURNS_SELF);
+        Mockito.when(mongoTemplate.count(any(Query.class), eq(Book.class))).thenReturn(0L);
+        Mockito.when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Book.class)).thenReturn(bulk);
+        final BulkWriteResult result =
+                BulkWriteResult.acknowledged(9, 0, 0, 0, Collections.emptyList(), Collections.emptyList());
+        Mockito.when(bulk.execute()).thenThrow(new BulkOperationException(error.getMessage(),
+                new MongoBulkWriteException(result, List.of(error), null, new ServerAddress())));
+    }
+}
@@ -0,0 +1,163 @@
+package com.oguzaslanturk.workshops.bookstore.config;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.ClusterId;
+import com.mongodb.connection.ConnectionDescription;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.any;
+
+public class SlowQueryRecorderTest {
+
+    private static final ConnectionDescription CONNECTION =
+            new ConnectionDescription(new ServerId(new ClusterId(), new ServerAddress()));
+    private static final long SLOW_NANOS = TimeUnit.MILLISECONDS.toNanos(150);
+
+    @SuppressWarnings("unchecked")
+    private final ObjectProvider<MongoTemplate> mongoTemplateProvider = Mockito.mock(ObjectProvider.class);
+
+    private final MongoTemplate mongoTemplate = Mockito.mock(MongoTemplate.class, Mockito.RETURNS_DEEP_STUBS);
+
+    private SlowQueryRecorder recorder;
+
+    private int requestId;
+
+    @AfterEach
+    public void tearDown() {
+        if (recorder != null) {
+            recorder.destroy();
+        }
+    }
+
+    @Test
+    public void givenCapacityBelowOne_whenCreated_thenRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new SlowQueryRecorder(Duration.ofMillis(100), 0, false, mongoTemplateProvider));
+    }
+
+    @Test
+    public void givenQueryBelowThreshold_whenSucceeded_thenNotRecorded() {
+        recorder = new SlowQueryRecorder(Duration.ofMillis(100), 10, false, mongoTemplateProvider);
+
+        find("books", TimeUnit.MILLISECONDS.toNanos(99));
+
+        assertThat(recorder.getSlowQueries(), is(empty()));
+    }
+
+    @Test
+    public void givenSlowFind_whenSucceeded_thenRecordedWithRedactedShape() {
+        recorder = new SlowQueryRecorder(Duration.ofMillis(100), 10, false, mongoTemplateProvider);
+        final BsonDocument command = BsonDocument.parse("{\"find\": \"books\", "
+                + "\"filter\": {\"normalizedName\": {\"$gte\": \"peter\", \"$lt\": \"petes\"}, "
+                + "\"$or\": [{\"isbn\": \"9786059489836\"}, {\"isbn\": null}]}, "
+                + "\"sort\": {\"normalizedName\": 1, \"_id\": 1}, \"limit\": 20, \"$db\": \"bookstore\"}");
+
+        run(command, BsonDocument.parse("{\"cursor\": {\"firstBatch\": [{}, {}], \"id\": 0}, \"ok\": 1}"), SLOW_NANOS);
+
+        final List<SlowQueryDto> slowQueries = recorder.getSlowQueries();
+        assertThat(slowQueries.size(), is(1));
+        assertThat(slowQueries.get(0).getCommand(), is("find"));
+        assertThat(slowQueries.get(0).getCollection(), is("books"));
+        assertThat(slowQueries.get(0).getDurationMillis(), is(150L));
+        assertThat(slowQueries.get(0).getDocsReturned(), is(2L));
+        assertThat(BsonDocument.parse(slowQueries.get(0).getShape()), is(BsonDocument.parse(
+                "{\"filter\": {\"normalizedName\": {\"$gte\": \"?\", \"$lt\": \"?\"}, "
+                        + "\"$or\": [{\"isbn\": \"?\"}, {\"isbn\": \"?\"}]}, "
+                        + "\"sort\": {\"normalizedName\": 1, \"_id\": 1}}")));
+    }
+
+    @Test
+    public void givenMoreSlowQueriesThanCapacity_whenRecorded_thenOldestEvicted() {
+        recorder = new SlowQueryRecorder(Duration.ofMillis(100), 2, false, mongoTemplateProvider);
+
+        find("first", SLOW_NANOS);
+        find("second", SLOW_NANOS);
+        find("third", SLOW_NANOS);
+
+        assertThat(collections(), contains("third", "second"));
+        recorder.clear();
+        assertThat(recorder.getSlowQueries(), is(empty()));
+        find("fourth", SLOW_NANOS);
+        assertThat(collections(), contains("fourth"));
+    }
+
+    @Test
+    public void givenExplainsBeyondTheQueue_whenRecorded_thenDropped() throws Exception {
+        final CountDownLatch released = new CountDownLatch(1);
+        Mockito.when(mongoTemplateProvider.getObject()).thenAnswer(invocation -> {
+            released.await();
+            return mongoTemplate;
+        });
+        Mockito.when(mongoTemplate.getMongoDatabaseFactory().getMongoDatabase(any()).runCommand(any(BsonDocument.class)))
+                .thenReturn(new Document("executionStats", new Document("totalDocsExamined", 1000)));
+        recorder = new SlowQueryRecorder(Duration.ofMillis(100), 2, true, mongoTemplateProvider);
+
+        // the first explain blocks the explain thread, the next two fill its queue and the fourth does not fit
+        find("first", SLOW_NANOS);
+        awaitUntil(() -> Mockito.mockingDetails(mongoTemplateProvider).getInvocations().size() == 1);
+        find("second", SLOW_NANOS);
+        find("third", SLOW_NANOS);
+        find("fourth", SLOW_NANOS);
+        released.countDown();
+        // once the third explain has started the queue is empty again, and explains run in order, so once a later
+        // one is done every queued one before it is
+        awaitUntil(() -> Mockito.mockingDetails(mongoTemplateProvider).getInvocations().size() == 3);
+        find("fifth", SLOW_NANOS);
+        awaitUntil(() -> recorder.getSlowQueries().get(0).getDocsExamined() != null);
+
+        Mockito.verify(mongoTemplateProvider, Mockito.times(4)).getObject();
+        assertThat(collections(), contains("fifth", "fourth"));
+        assertThat(recorder.getSlowQueries().get(0).getDocsExamined(), is(1000L));
+        assertThat(recorder.getSlowQueries().get(1).getDocsExamined(), nullValue());
+    }
+
+    private void find(String collection, long elapsedNanos) {
+        run(new BsonDocument("find", new BsonString(collection)),
+                BsonDocument.parse("{\"cursor\": {\"firstBatch\": [], \"id\": 0}, \"ok\": 1}"), elapsedNanos);
+    }
+
+    private void run(BsonDocument command, BsonDocument response, long elapsedNanos) {
+        final int id = ++requestId;
+        final String commandName = command.getFirstKey();
+        recorder.commandStarted(new CommandStartedEvent(id, CONNECTION, "bookstore", commandName, command));
+        recorder.commandSucceeded(new CommandSucceededEvent(id, CONNECTION, commandName, response, elapsedNanos));
+    }
+
+    private List<String> collections() {
+        return recorder.getSlowQueries().stream().map(SlowQueryDto::getCollection).collect(Collectors.toList());
+    }
+
+    private static void awaitUntil(Supplier<Boolean> condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.get()) {
+            if (System.nanoTime() > deadline) {
+                fail("Condition not met within 5 seconds");
+            }
+            Thread.sleep(10);
+        }
+    }
+}
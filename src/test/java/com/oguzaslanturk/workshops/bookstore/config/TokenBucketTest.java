@@ -0,0 +1,58 @@
+package com.oguzaslanturk.workshops.bookstore.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class TokenBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void givenFullBucket_whenConsumeCapacity_thenAdmittedUntilEmpty() {
+        TokenBucket bucket = new TokenBucket(10, 5, 0);
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(bucket.tryConsume(2, 0), is(0L));
+        }
+        assertThat(bucket.tryConsume(1, 0), is(SECOND / 5));
+    }
+
+    @Test
+    public void givenEmptyBucket_whenConsume_thenNanosUntilRefilled() {
+        TokenBucket bucket = new TokenBucket(10, 5, 0);
+        bucket.tryConsume(10, 0);
+
+        assertThat(bucket.tryConsume(3, 0), is(SECOND * 3 / 5));
+        assertThat(bucket.tryConsume(3, SECOND / 5), is(SECOND * 2 / 5));
+        assertThat(bucket.tryConsume(3, SECOND * 3 / 5), is(0L));
+    }
+
+    @Test
+    public void givenLongIdleBucket_whenConsume_thenRefilledOnlyToCapacity() {
+        TokenBucket bucket = new TokenBucket(10, 5, 0);
+        bucket.tryConsume(10, 0);
+
+        assertThat(bucket.tryConsume(10, SECOND * 60), is(0L));
+        assertThat(bucket.tryConsume(1, SECOND * 60), is(SECOND / 5));
+    }
+
+    @Test
+    public void givenCostAboveCapacity_whenConsume_thenChargedAsFullBucket() {
+        TokenBucket bucket = new TokenBucket(10, 5, 0);
+
+        assertThat(bucket.tryConsume(50, 0), is(0L));
+        assertThat(bucket.tryConsume(50, 0), is(SECOND * 2));
+    }
+
+    @Test
+    public void givenClockBeforeLastRefill_whenConsume_thenNothingRefilled() {
+        TokenBucket bucket = new TokenBucket(10, 5, SECOND);
+        bucket.tryConsume(10, SECOND);
+
+        assertThat(bucket.tryConsume(1, 0), is(SECOND / 5));
+    }
+}